@@ -52,6 +52,7 @@ public abstract class EspLab extends Application {
 	public void start(Stage stage) throws Exception {
 		try {
 			AbstractGraph<?> rdg = getGraph(getConnection());
+			rdg.getMetrics().register(getClass().getSimpleName());
 
 			Scene scene = new Scene(rdg.getLayout());
 			stage.setScene(scene);
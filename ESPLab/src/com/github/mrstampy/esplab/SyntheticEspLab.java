@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab;
+
+import java.io.IOException;
+
+import com.github.mrstampy.esp.dsp.lab.RawEspConnection;
+import com.github.mrstampy.esplab.connection.SyntheticConnection;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class SyntheticEspLab runs the {@link EspLab} example against a
+ * {@link SyntheticConnection}, so the graphs can be exercised without a
+ * device. Included for reference.
+ */
+public class SyntheticEspLab extends EspLab {
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esplab.EspLab#getConnection()
+	 */
+	@Override
+	protected RawEspConnection getConnection() throws IOException {
+		SyntheticConnection connection = new SyntheticConnection("Synthetic", 4, 512, 1024);
+
+		connection.addSine(SyntheticConnection.ALL_CHANNELS, 10, 1);
+		connection.addSine(1, 22, 0.5);
+		connection.setNoise(0.1);
+		connection.setBurst(35, 2, 5000, 500);
+		connection.setDropout(30000, 1000);
+
+		return connection;
+	}
+
+	/**
+	 * The main method.
+	 *
+	 * @param args
+	 *          the arguments
+	 */
+	public static void main(String[] args) {
+		launch(args);
+	}
+}
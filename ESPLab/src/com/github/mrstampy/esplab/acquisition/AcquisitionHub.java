@@ -0,0 +1,447 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.acquisition;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rx.Scheduler;
+import rx.Scheduler.Inner;
+import rx.functions.Action1;
+import rx.schedulers.Schedulers;
+
+import com.github.mrstampy.esp.dsp.lab.RawEspConnection;
+import com.github.mrstampy.esplab.metrics.LatencyHistogram;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class AcquisitionHub polls a {@link RawEspConnection} on behalf of any
+ * number of subscribers, so that several graphs of one device do not each hit
+ * the connection. There is one hub per connection, obtained with
+ * {@link #getHub(RawEspConnection)}.<br>
+ * <br>
+ * Each tick the hub fetches the samples for each distinct channel subscribed
+ * to (or all channels, {@link #ALL_CHANNELS}) once, and delivers them to every
+ * subscriber whose own period has elapsed. The hub polls at the fastest period
+ * of its subscribers. Subscribers are reference counted: the hub starts
+ * polling with the first and stops, and is released, when the last
+ * unsubscribes.<br>
+ * <br>
+ * Subscribers may instead {@link #stream(SampleStreamListener)} the
+ * connection, receiving every sample of all channels exactly once as
+ * sequence numbered {@link SampleBlock}s. Connections which are a
+ * {@link SampleStream} are streamed as they push; any other is polled every
+ * {@link #getStreamPeriod()} millis and its snapshots aligned by a
+ * {@link SnapshotAligner}, which detects the gaps should the period be too
+ * long for the connection's buffer.
+ */
+public class AcquisitionHub {
+	private static final Logger log = LoggerFactory.getLogger(AcquisitionHub.class);
+
+	/** Subscribe to {@link RawEspConnection#getCurrent()} rather than a channel. */
+	public static final int ALL_CHANNELS = -1;
+
+	/** The default period between snapshots of a connection being streamed. */
+	public static final long DEFAULT_STREAM_PERIOD = 20;
+
+	private static final Map<RawEspConnection, AcquisitionHub> hubs = new HashMap<>();
+
+	private final RawEspConnection connection;
+
+	private List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+	private Scheduler scheduler = Schedulers.io();
+	private rx.Subscription snap;
+	private long period;
+
+	private Map<Integer, double[][]> tick = new HashMap<>();
+
+	private List<StreamSubscriber> streamSubscribers = new CopyOnWriteArrayList<>();
+	private SampleStreamListener streamer = b -> streamed(b);
+	private rx.Subscription streamSnap;
+	private volatile long streamPeriod = DEFAULT_STREAM_PERIOD;
+	private final LatencyHistogram fetchLatency = new LatencyHistogram();
+
+	/**
+	 * Gets the hub for the connection, creating it if necessary.
+	 *
+	 * @param connection
+	 *          the connection
+	 * @return the hub
+	 */
+	public static AcquisitionHub getHub(RawEspConnection connection) {
+		if (connection == null) throw new IllegalArgumentException("Connection must be specified");
+
+		synchronized (hubs) {
+			AcquisitionHub hub = hubs.get(connection);
+			if (hub == null) {
+				hub = new AcquisitionHub(connection);
+				hubs.put(connection, hub);
+			}
+
+			return hub;
+		}
+	}
+
+	private AcquisitionHub(RawEspConnection connection) {
+		this.connection = connection;
+	}
+
+	/**
+	 * Subscribe to the samples of a channel.
+	 *
+	 * @param channel
+	 *          the channel, or {@link #ALL_CHANNELS}
+	 * @param periodMillis
+	 *          the minimum period between deliveries
+	 * @param listener
+	 *          the listener
+	 * @return the subscriber, used to change the period and to unsubscribe
+	 * @throws IllegalStateException
+	 *           if this hub was released and replaced by another of the
+	 *           connection, see {@link #getHub(RawEspConnection)}
+	 */
+	public Subscriber subscribe(int channel, long periodMillis, SampleListener listener) {
+		if (listener == null) throw new IllegalArgumentException("Listener must be specified");
+
+		Subscriber s = new Subscriber(channel, periodMillis, listener);
+
+		synchronized (hubs) {
+			register();
+			subscribers.add(s);
+			reschedule();
+		}
+
+		return s;
+	}
+
+	/**
+	 * Stream every sample of all channels of the connection.
+	 *
+	 * @param listener
+	 *          the listener
+	 * @return the subscriber, used to unsubscribe
+	 * @throws IllegalStateException
+	 *           if this hub was released and replaced by another of the
+	 *           connection, see {@link #getHub(RawEspConnection)}
+	 */
+	public StreamSubscriber stream(SampleStreamListener listener) {
+		if (listener == null) throw new IllegalArgumentException("Listener must be specified");
+
+		StreamSubscriber s = new StreamSubscriber(listener);
+
+		synchronized (hubs) {
+			register();
+			streamSubscribers.add(s);
+			if (streamSubscribers.size() == 1) startStream();
+		}
+
+		return s;
+	}
+
+	/**
+	 * Gets the period between snapshots when streaming a connection which is
+	 * not a {@link SampleStream}.
+	 *
+	 * @return the stream period in millis
+	 */
+	public long getStreamPeriod() {
+		return streamPeriod;
+	}
+
+	/**
+	 * Sets the period between snapshots when streaming a connection which is
+	 * not a {@link SampleStream}. It must be shorter than the time the
+	 * connection's buffer takes to fill, else samples are lost between
+	 * snapshots. Takes effect immediately if streaming.
+	 *
+	 * @param millis
+	 *          the new stream period
+	 */
+	public void setStreamPeriod(long millis) {
+		if (millis <= 0) throw new IllegalArgumentException("Stream period must be > 0: " + millis);
+
+		synchronized (hubs) {
+			streamPeriod = millis;
+			if (streamSnap != null) {
+				stopStream();
+				startStream();
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of subscribers.
+	 *
+	 * @return the subscriber count
+	 */
+	public int getSubscriberCount() {
+		return subscribers.size();
+	}
+
+	/**
+	 * Gets the current polling period, 0 if not polling.
+	 *
+	 * @return the period in millis
+	 */
+	public long getPeriod() {
+		return period;
+	}
+
+	/**
+	 * Gets the connection.
+	 *
+	 * @return the connection
+	 */
+	public RawEspConnection getConnection() {
+		return connection;
+	}
+
+	/**
+	 * Gets the time taken fetching samples from the connection, shared by all
+	 * subscribers.
+	 *
+	 * @return the fetch latency
+	 */
+	public LatencyHistogram getFetchLatency() {
+		return fetchLatency;
+	}
+
+	private void unsubscribe(Subscriber s) {
+		synchronized (hubs) {
+			subscribers.remove(s);
+			release();
+			reschedule();
+		}
+	}
+
+	private void unsubscribe(StreamSubscriber s) {
+		synchronized (hubs) {
+			if (!streamSubscribers.remove(s)) return;
+
+			release();
+			if (streamSubscribers.isEmpty()) stopStream();
+		}
+	}
+
+	// a released hub is registered again unless another has since replaced it,
+	// else the connection would be polled by both
+	private void register() {
+		AcquisitionHub registered = hubs.get(connection);
+		if (registered == null) {
+			hubs.put(connection, this);
+		} else if (registered != this) {
+			throw new IllegalStateException("The hub of " + connection.getName() + " has been replaced, use getHub");
+		}
+	}
+
+	private void release() {
+		if (subscribers.isEmpty() && streamSubscribers.isEmpty()) hubs.remove(connection);
+	}
+
+	private void startStream() {
+		if (connection instanceof SampleStream) {
+			log.debug("Streaming {}", connection.getName());
+			((SampleStream) connection).addSampleStreamListener(streamer);
+			return;
+		}
+
+		log.debug("Streaming {} from snapshots every {} ms", connection.getName(), streamPeriod);
+		SnapshotAligner aligner = new SnapshotAligner();
+		streamSnap = scheduler.schedulePeriodically(new Action1<Scheduler.Inner>() {
+
+			@Override
+			public void call(Inner t1) {
+				snapshot(aligner);
+			}
+		}, 0, streamPeriod, TimeUnit.MILLISECONDS);
+	}
+
+	private void stopStream() {
+		if (connection instanceof SampleStream) {
+			((SampleStream) connection).removeSampleStreamListener(streamer);
+		}
+
+		if (streamSnap != null) streamSnap.unsubscribe();
+		streamSnap = null;
+		log.debug("Stopped streaming {}", connection.getName());
+	}
+
+	private void snapshot(SnapshotAligner aligner) {
+		try {
+			long start = System.nanoTime();
+			double[][] samples = connection.getCurrent();
+			fetchLatency.recordSince(start);
+
+			SampleBlock block = aligner.align(samples);
+			if (block != null) streamed(block);
+		} catch (Throwable e) {
+			log.error("Unexpected exception", e);
+		}
+	}
+
+	private void streamed(SampleBlock block) {
+		for (StreamSubscriber s : streamSubscribers) {
+			try {
+				s.listener.samplesStreamed(block);
+			} catch (Throwable e) {
+				log.error("Unexpected exception", e);
+			}
+		}
+	}
+
+	private void reschedule() {
+		long fastest = Long.MAX_VALUE;
+		for (Subscriber s : subscribers) {
+			fastest = Math.min(fastest, s.period);
+		}
+
+		if (fastest == Long.MAX_VALUE) fastest = 0;
+		if (fastest == period) return;
+
+		if (snap != null) snap.unsubscribe();
+		snap = null;
+		period = fastest;
+
+		if (period == 0) {
+			log.debug("Stopped polling {}", connection.getName());
+			return;
+		}
+
+		log.debug("Polling {} every {} ms", connection.getName(), period);
+		snap = scheduler.schedulePeriodically(new Action1<Scheduler.Inner>() {
+
+			@Override
+			public void call(Inner t1) {
+				poll();
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	private synchronized void poll() {
+		long now = System.nanoTime();
+		long tolerance = TimeUnit.MILLISECONDS.toNanos(period) / 2;
+
+		tick.clear();
+		for (Subscriber s : subscribers) {
+			if (now - s.lastDelivery < TimeUnit.MILLISECONDS.toNanos(s.period) - tolerance) continue;
+
+			try {
+				double[][] samples = tick.get(s.channel);
+				if (samples == null) {
+					long start = System.nanoTime();
+					samples = s.channel == ALL_CHANNELS ? connection.getCurrent() : connection.getCurrentFor(s.channel);
+					fetchLatency.recordSince(start);
+					tick.put(s.channel, samples);
+				}
+
+				s.lastDelivery = now;
+				s.listener.samplesAcquired(samples);
+			} catch (Throwable e) {
+				log.error("Unexpected exception", e);
+			}
+		}
+	}
+
+	/**
+	 * The Class StreamSubscriber is the handle returned by
+	 * {@link AcquisitionHub#stream(SampleStreamListener)}.
+	 */
+	public class StreamSubscriber {
+		private final SampleStreamListener listener;
+
+		private StreamSubscriber(SampleStreamListener listener) {
+			this.listener = listener;
+		}
+
+		/**
+		 * Stops delivery to this subscriber. When the last stream subscriber of
+		 * a hub unsubscribes the hub stops streaming.
+		 */
+		public void unsubscribe() {
+			AcquisitionHub.this.unsubscribe(this);
+		}
+	}
+
+	/**
+	 * The Class Subscriber is the handle returned by
+	 * {@link AcquisitionHub#subscribe(int, long, SampleListener)}.
+	 */
+	public class Subscriber {
+		private final int channel;
+		private final SampleListener listener;
+		private volatile long period;
+		private long lastDelivery;
+
+		private Subscriber(int channel, long period, SampleListener listener) {
+			if (period <= 0) throw new IllegalArgumentException("Period must be > 0: " + period);
+
+			this.channel = channel;
+			this.period = period;
+			this.listener = listener;
+		}
+
+		/**
+		 * Sets the minimum period between deliveries to this subscriber.
+		 *
+		 * @param periodMillis
+		 *          the new period
+		 */
+		public void setPeriod(long periodMillis) {
+			if (periodMillis <= 0) throw new IllegalArgumentException("Period must be > 0: " + periodMillis);
+
+			synchronized (hubs) {
+				period = periodMillis;
+				reschedule();
+			}
+		}
+
+		/**
+		 * Gets the period.
+		 *
+		 * @return the period
+		 */
+		public long getPeriod() {
+			return period;
+		}
+
+		/**
+		 * Gets the channel.
+		 *
+		 * @return the channel
+		 */
+		public int getChannel() {
+			return channel;
+		}
+
+		/**
+		 * Stops delivery to this subscriber. When the last subscriber of a hub
+		 * unsubscribes the hub stops polling.
+		 */
+		public void unsubscribe() {
+			AcquisitionHub.this.unsubscribe(this);
+		}
+	}
+}
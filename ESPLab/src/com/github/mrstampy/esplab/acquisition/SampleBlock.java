@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.acquisition;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class SampleBlock is a block of a continuous sample stream: the samples
+ * of every channel which followed the previous block, numbered by the
+ * position of the first in the stream. A block which does not directly follow
+ * its predecessor is a gap, and carries the number of samples lost if known.
+ */
+public class SampleBlock {
+
+	/** The number of samples missed before a gap, when it cannot be known. */
+	public static final long UNKNOWN = -1;
+
+	private final long sequence;
+	private final double[][] samples;
+	private final long missed;
+
+	/**
+	 * Instantiates a new sample block.
+	 *
+	 * @param sequence
+	 *          the position in the stream of the first sample of the block
+	 * @param samples
+	 *          the samples, one row per channel with channel 1 first
+	 * @param missed
+	 *          the samples lost immediately before the block, 0 if none or
+	 *          {@link #UNKNOWN}
+	 */
+	public SampleBlock(long sequence, double[][] samples, long missed) {
+		this.sequence = sequence;
+		this.samples = samples;
+		this.missed = missed;
+	}
+
+	/**
+	 * Gets the position in the stream of the first sample of the block. The
+	 * next block of a gapless stream starts at sequence + length.
+	 *
+	 * @return the sequence
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Gets the samples, one row per channel with channel 1 first. The arrays
+	 * are shared by all listeners and must not be modified.
+	 *
+	 * @return the samples
+	 */
+	public double[][] getSamples() {
+		return samples;
+	}
+
+	/**
+	 * Gets the samples of a channel.
+	 *
+	 * @param channelNumber
+	 *          the channel number, from 1
+	 * @return the channel samples, empty if the block has no such channel
+	 */
+	public double[] getChannel(int channelNumber) {
+		int row = channelNumber - 1;
+		return row >= 0 && row < samples.length ? samples[row] : new double[0];
+	}
+
+	/**
+	 * Gets the number of samples per channel.
+	 *
+	 * @return the length
+	 */
+	public int getLength() {
+		return samples.length == 0 ? 0 : samples[0].length;
+	}
+
+	/**
+	 * Gets the number of samples lost immediately before the block.
+	 *
+	 * @return the missed samples, 0 if none or {@link #UNKNOWN}
+	 */
+	public long getMissed() {
+		return missed;
+	}
+
+	/**
+	 * Checks if samples were lost immediately before the block.
+	 *
+	 * @return true, if a gap
+	 */
+	public boolean isGap() {
+		return missed != 0;
+	}
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.acquisition;
+
+/**
+ * Implemented by connections which push every sample as it is produced,
+ * rather than only serving snapshots of their most recent samples. The
+ * {@link AcquisitionHub} streams such connections directly; others are
+ * streamed by aligning successive snapshots with a {@link SnapshotAligner}.
+ */
+public interface SampleStream {
+
+	/**
+	 * Adds the sample stream listener.
+	 *
+	 * @param l
+	 *          the l
+	 */
+	void addSampleStreamListener(SampleStreamListener l);
+
+	/**
+	 * Removes the sample stream listener.
+	 *
+	 * @param l
+	 *          the l
+	 */
+	void removeSampleStreamListener(SampleStreamListener l);
+}
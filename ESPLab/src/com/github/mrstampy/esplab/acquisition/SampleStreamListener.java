@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.acquisition;
+
+/**
+ * The listener interface for receiving the blocks of a continuous sample
+ * stream from a {@link SampleStream} or an {@link AcquisitionHub}.
+ */
+public interface SampleStreamListener {
+
+	/**
+	 * Invoked with each block of the stream, in sequence, on the thread
+	 * producing it.
+	 *
+	 * @param block
+	 *          the block
+	 */
+	void samplesStreamed(SampleBlock block);
+}
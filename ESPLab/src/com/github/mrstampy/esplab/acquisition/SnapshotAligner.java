@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.acquisition;
+
+import java.util.Arrays;
+
+import com.github.mrstampy.esp.dsp.lab.RawEspConnection;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class SnapshotAligner turns the successive snapshots returned by
+ * {@link RawEspConnection#getCurrent()}, each the most recent samples of every
+ * channel, into a continuous stream of {@link SampleBlock}s holding only the
+ * samples not seen before.<br>
+ * <br>
+ * Each snapshot is aligned with the previous by finding the longest suffix of
+ * the previous which is a prefix of the new one, on every channel; the
+ * remainder of the new snapshot is the block. Should there be no overlap the
+ * snapshots were taken too far apart and samples have been lost; the whole
+ * snapshot is returned as a gap of {@link SampleBlock#UNKNOWN} length.<br>
+ * <br>
+ * Alignment is exact, as snapshots are copies of the same samples. A signal
+ * which repeats exactly over the length of a snapshot, such as a flatline,
+ * is ambiguous and is taken to have produced as few new samples as possible.
+ * Not thread safe; snapshots are aligned on the polling thread.
+ */
+public class SnapshotAligner {
+
+	private double[][] previous;
+	private long sequence;
+
+	/**
+	 * Aligns the snapshot with the previous.
+	 *
+	 * @param snapshot
+	 *          the snapshot, one row per channel with channel 1 first
+	 * @return the block of new samples, or null if there are none
+	 */
+	public SampleBlock align(double[][] snapshot) {
+		int length = length(snapshot);
+		if (length == 0) return null;
+
+		double[][] prev = previous;
+		previous = snapshot;
+
+		if (prev == null || prev.length != snapshot.length) return block(snapshot, 0, length, prev == null ? 0 : SampleBlock.UNKNOWN);
+
+		int prevLength = length(prev);
+		for (int shift = Math.max(0, prevLength - length); shift < prevLength; shift++) {
+			int overlap = prevLength - shift;
+			if (overlaps(prev, shift, snapshot, overlap)) {
+				return overlap == length ? null : block(snapshot, overlap, length, 0);
+			}
+		}
+
+		return block(snapshot, 0, length, SampleBlock.UNKNOWN);
+	}
+
+	/**
+	 * Forgets the previous snapshot and restarts the sequence.
+	 */
+	public void reset() {
+		previous = null;
+		sequence = 0;
+	}
+
+	private boolean overlaps(double[][] prev, int shift, double[][] snapshot, int overlap) {
+		// cheap rejection on the first sample before comparing the whole overlap
+		for (int ch = 0; ch < prev.length; ch++) {
+			if (!same(prev[ch][shift], snapshot[ch][0])) return false;
+		}
+
+		for (int ch = 0; ch < prev.length; ch++) {
+			double[] p = prev[ch];
+			double[] s = snapshot[ch];
+			for (int i = 1; i < overlap; i++) {
+				if (!same(p[shift + i], s[i])) return false;
+			}
+		}
+
+		return true;
+	}
+
+	private SampleBlock block(double[][] snapshot, int from, int to, long missed) {
+		double[][] samples = new double[snapshot.length][];
+		for (int ch = 0; ch < samples.length; ch++) {
+			samples[ch] = from == 0 && to == snapshot[ch].length ? snapshot[ch] : Arrays.copyOfRange(snapshot[ch], from, to);
+		}
+
+		SampleBlock block = new SampleBlock(sequence, samples, missed);
+		sequence += to - from;
+
+		return block;
+	}
+
+	private static boolean same(double a, double b) {
+		return Double.doubleToRawLongBits(a) == Double.doubleToRawLongBits(b);
+	}
+
+	private static int length(double[][] snapshot) {
+		if (snapshot == null || snapshot.length == 0) return 0;
+
+		int length = Integer.MAX_VALUE;
+		for (double[] row : snapshot) {
+			length = Math.min(length, row == null ? 0 : row.length);
+		}
+
+		return length;
+	}
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.buffer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// TODO: Auto-generated Javadoc
+/**
+ * A lock free, single producer / single consumer ring buffer of primitive
+ * doubles. When full the buffer applies its {@link OverflowPolicy} rather than
+ * blocking or throwing; every value lost to the policy is counted and available
+ * from {@link #getDroppedCount()}.<br>
+ * <br>
+ * Only one thread may call the producer methods ({@link #add(double)},
+ * {@link #addAll(double[])}) and only one thread the consumer methods (
+ * {@link #drainTo(double[])}, {@link #clear()}).
+ */
+public class DoubleRingBuffer {
+
+	private final double[] buffer;
+	private final int mask;
+	private final OverflowPolicy policy;
+
+	private final AtomicLong readIndex = new AtomicLong();
+	private final AtomicLong writeIndex = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+
+	/**
+	 * Instantiates a new double ring buffer.
+	 *
+	 * @param capacity
+	 *          the minimum capacity, rounded up to the next power of two
+	 * @param policy
+	 *          the overflow policy
+	 */
+	public DoubleRingBuffer(int capacity, OverflowPolicy policy) {
+		if (capacity <= 0) throw new IllegalArgumentException("Capacity must be > 0: " + capacity);
+		if (policy == null) throw new IllegalArgumentException("Overflow policy must be specified");
+
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) size <<= 1;
+
+		buffer = new double[size];
+		mask = size - 1;
+		this.policy = policy;
+	}
+
+	/**
+	 * Adds the value. Producer thread only.
+	 *
+	 * @param value
+	 *          the value
+	 * @return true, if the value was added. When the policy is
+	 *         {@link OverflowPolicy#OVERWRITE_OLDEST} this is always true.
+	 */
+	public boolean add(double value) {
+		long w = writeIndex.get();
+
+		if (!makeRoom(w)) return false;
+
+		buffer[(int) (w & mask)] = value;
+		writeIndex.lazySet(w + 1);
+
+		return true;
+	}
+
+	/**
+	 * Adds all the values. Producer thread only.
+	 *
+	 * @param values
+	 *          the values
+	 * @return the number of values added
+	 */
+	public int addAll(double[] values) {
+		int added = 0;
+		for (int i = 0; i < values.length; i++) {
+			if (add(values[i])) added++;
+		}
+
+		return added;
+	}
+
+	private boolean makeRoom(long w) {
+		while (true) {
+			long r = readIndex.get();
+			if (w - r < buffer.length) return true;
+
+			dropped.incrementAndGet();
+			if (policy == OverflowPolicy.DROP_NEWEST) return false;
+
+			// the consumer may have moved in the meantime; if so there is room now
+			if (readIndex.compareAndSet(r, r + 1)) return true;
+			dropped.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Drains as many values as will fit into the destination, oldest first.
+	 * Consumer thread only.
+	 *
+	 * @param dest
+	 *          the destination
+	 * @return the number of values drained
+	 */
+	public int drainTo(double[] dest) {
+		while (true) {
+			long r = readIndex.get();
+			long w = writeIndex.get();
+
+			int num = (int) Math.min(w - r, dest.length);
+			if (num <= 0) return 0;
+
+			int from = (int) (r & mask);
+			int first = Math.min(num, buffer.length - from);
+			System.arraycopy(buffer, from, dest, 0, first);
+			if (first < num) System.arraycopy(buffer, 0, dest, first, num - first);
+
+			// fails only if the producer overwrote what we just copied
+			if (readIndex.compareAndSet(r, r + num)) return num;
+		}
+	}
+
+	/**
+	 * Discards all unread values. Consumer thread only.
+	 */
+	public void clear() {
+		while (true) {
+			long r = readIndex.get();
+			if (readIndex.compareAndSet(r, Math.max(r, writeIndex.get()))) return;
+		}
+	}
+
+	/**
+	 * Returns the number of unread values.
+	 *
+	 * @return the size
+	 */
+	public int size() {
+		long r = readIndex.get();
+		return (int) Math.max(0, Math.min(writeIndex.get() - r, buffer.length));
+	}
+
+	/**
+	 * Gets the capacity.
+	 *
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return buffer.length;
+	}
+
+	/**
+	 * Gets the overflow policy.
+	 *
+	 * @return the policy
+	 */
+	public OverflowPolicy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Gets the number of values lost to the overflow policy since creation or
+	 * the last {@link #resetDroppedCount()}.
+	 *
+	 * @return the dropped count
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/**
+	 * Resets the dropped count.
+	 */
+	public void resetDroppedCount() {
+		dropped.set(0);
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.buffer;
+
+import java.util.Arrays;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class SampleWindow keeps the most recent samples of each of several
+ * channels, as a block of a continuous stream is appended, so that fixed
+ * length windows of the stream can be taken for processing. Not thread safe;
+ * appended to and read by the acquisition thread.
+ */
+public class SampleWindow {
+
+	private final int length;
+
+	private double[][] rows = new double[0][];
+	private int pos;
+	private int filled;
+	private long appended;
+
+	/**
+	 * Instantiates a new sample window.
+	 *
+	 * @param length
+	 *          the number of samples per channel in the window
+	 */
+	public SampleWindow(int length) {
+		if (length <= 0) throw new IllegalArgumentException("Length must be > 0: " + length);
+
+		this.length = length;
+	}
+
+	/**
+	 * Appends a block of samples, one row per channel. Should the number of
+	 * channels change the window is cleared first.
+	 *
+	 * @param samples
+	 *          the samples
+	 */
+	public void append(double[][] samples) {
+		append(samples, 0, samples.length == 0 ? 0 : samples[0].length);
+	}
+
+	/**
+	 * Appends part of a block of samples, one row per channel. Should the
+	 * number of channels change the window is cleared first.
+	 *
+	 * @param samples
+	 *          the samples
+	 * @param offset
+	 *          the index of the first sample of each row to append
+	 * @param num
+	 *          the number of samples of each row to append
+	 */
+	public void append(double[][] samples, int offset, int num) {
+		if (samples.length != rows.length) {
+			rows = new double[samples.length][length];
+			clear();
+		}
+
+		int from = offset + Math.max(0, num - length);
+		int to = offset + num;
+
+		for (int ch = 0; ch < rows.length; ch++) {
+			double[] src = samples[ch];
+			double[] dest = rows[ch];
+			int p = pos;
+			for (int i = from; i < to; i++) {
+				dest[p] = src[i];
+				if (++p == length) p = 0;
+			}
+		}
+
+		pos = (pos + to - from) % length;
+		filled = Math.min(length, filled + to - from);
+		appended += num;
+	}
+
+	/**
+	 * Checks if the window holds its full length of samples.
+	 *
+	 * @return true, if full
+	 */
+	public boolean isFull() {
+		return filled == length;
+	}
+
+	/**
+	 * Copies the window, oldest sample first.
+	 *
+	 * @return the samples, one row per channel
+	 */
+	public double[][] snapshot() {
+		double[][] copy = new double[rows.length][];
+		for (int ch = 0; ch < rows.length; ch++) {
+			double[] src = rows[ch];
+			double[] dest = new double[filled];
+
+			int first = filled - pos;
+			if (first > 0) System.arraycopy(src, length - first, dest, 0, first);
+			System.arraycopy(src, Math.max(0, pos - filled), dest, Math.max(0, first), Math.min(pos, filled));
+			copy[ch] = dest;
+		}
+
+		return copy;
+	}
+
+	/**
+	 * Empties the window.
+	 */
+	public void clear() {
+		for (double[] row : rows) {
+			Arrays.fill(row, 0);
+		}
+
+		pos = 0;
+		filled = 0;
+		appended = 0;
+	}
+
+	/**
+	 * Gets the number of samples per channel in a full window.
+	 *
+	 * @return the length
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Gets the number of samples per channel appended since the window was
+	 * cleared.
+	 *
+	 * @return the appended count
+	 */
+	public long getAppended() {
+		return appended;
+	}
+}
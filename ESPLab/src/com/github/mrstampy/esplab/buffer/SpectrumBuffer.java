@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.buffer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class SpectrumBuffer hands spectra from a single writer (the DSP thread)
+ * to a single reader (the FX thread) without allocating or locking. The
+ * writer copies into its back buffer and publishes it; the reader swaps the
+ * latest published buffer to the front on its next pulse. A spare buffer
+ * sits between the two so that neither side ever waits on the other, and
+ * only the most recent spectrum is ever read. The three buffers are
+ * preallocated and only resized should the spectrum length change.
+ */
+public class SpectrumBuffer {
+
+	private static final int INDEX_MASK = 0x3;
+	private static final int FRESH = 0x4;
+
+	private final double[][] buffers = new double[3][];
+
+	private int back = 0;
+	private int front = 1;
+	private final AtomicInteger middle = new AtomicInteger(2);
+
+	private AtomicLong overwritten = new AtomicLong();
+
+	/**
+	 * Instantiates a new spectrum buffer.
+	 *
+	 * @param length
+	 *          the initial spectrum length
+	 */
+	public SpectrumBuffer(int length) {
+		for (int i = 0; i < buffers.length; i++) {
+			buffers[i] = new double[length];
+		}
+	}
+
+	/**
+	 * Copies the spectrum into the back buffer and publishes it, replacing any
+	 * spectrum published but not yet read. Writer thread only.
+	 *
+	 * @param spectrum
+	 *          the spectrum
+	 */
+	public void write(double[] spectrum) {
+		double[] buf = buffers[back];
+		if (buf.length != spectrum.length) {
+			buf = new double[spectrum.length];
+			buffers[back] = buf;
+		}
+
+		System.arraycopy(spectrum, 0, buf, 0, spectrum.length);
+
+		int old = middle.getAndSet(back | FRESH);
+		if ((old & FRESH) != 0) overwritten.incrementAndGet();
+
+		back = old & INDEX_MASK;
+	}
+
+	/**
+	 * Returns the most recently published spectrum, or null if nothing has been
+	 * published since the last read. The returned array belongs to the reader
+	 * until the next call. Reader thread only.
+	 *
+	 * @return the spectrum, or null
+	 */
+	public double[] read() {
+		if ((middle.get() & FRESH) == 0) return null;
+
+		int old = middle.getAndSet(front);
+		front = old & INDEX_MASK;
+
+		return buffers[front];
+	}
+
+	/**
+	 * Checks if a spectrum has been published and not yet read.
+	 *
+	 * @return true, if pending
+	 */
+	public boolean isPending() {
+		return (middle.get() & FRESH) != 0;
+	}
+
+	/**
+	 * Gets the number of spectra replaced before they could be read.
+	 *
+	 * @return the overwritten count
+	 */
+	public long getOverwrittenCount() {
+		return overwritten.get();
+	}
+}
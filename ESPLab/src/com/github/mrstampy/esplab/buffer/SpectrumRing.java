@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.buffer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class SpectrumRing queues every spectrum from a single writer to a
+ * single reader, unlike the {@link SpectrumBuffer} which keeps only the
+ * latest. Spectra are copied into preallocated slots; when the reader falls
+ * a full ring behind, new spectra are dropped and counted.
+ */
+public class SpectrumRing {
+
+	private final double[][] slots;
+	private final int mask;
+
+	private final AtomicLong writeIndex = new AtomicLong();
+	private final AtomicLong readIndex = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+
+	/**
+	 * Instantiates a new spectrum ring.
+	 *
+	 * @param capacity
+	 *          the number of spectra, rounded up to a power of two
+	 * @param length
+	 *          the initial spectrum length
+	 */
+	public SpectrumRing(int capacity, int length) {
+		if (capacity <= 0) throw new IllegalArgumentException("Capacity must be > 0: " + capacity);
+
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) size <<= 1;
+
+		slots = new double[size][length];
+		mask = size - 1;
+	}
+
+	/**
+	 * Copies the spectrum into the ring. Writer thread only.
+	 *
+	 * @param spectrum
+	 *          the spectrum
+	 * @return true, if queued
+	 */
+	public boolean add(double[] spectrum) {
+		long w = writeIndex.get();
+		if (w - readIndex.get() >= slots.length) {
+			dropped.incrementAndGet();
+			return false;
+		}
+
+		int slot = (int) (w & mask);
+		if (slots[slot].length != spectrum.length) slots[slot] = new double[spectrum.length];
+		System.arraycopy(spectrum, 0, slots[slot], 0, spectrum.length);
+
+		writeIndex.lazySet(w + 1);
+
+		return true;
+	}
+
+	/**
+	 * Returns the oldest queued spectrum without removing it, or null if there
+	 * is none. The array remains valid until {@link #remove()}. Reader thread
+	 * only.
+	 *
+	 * @return the spectrum, or null
+	 */
+	public double[] peek() {
+		long r = readIndex.get();
+		if (r == writeIndex.get()) return null;
+
+		return slots[(int) (r & mask)];
+	}
+
+	/**
+	 * Removes the oldest queued spectrum. Reader thread only.
+	 */
+	public void remove() {
+		long r = readIndex.get();
+		if (r != writeIndex.get()) readIndex.lazySet(r + 1);
+	}
+
+	/**
+	 * Discards all queued spectra. Reader thread only.
+	 */
+	public void clear() {
+		readIndex.set(writeIndex.get());
+	}
+
+	/**
+	 * Gets the number of queued spectra.
+	 *
+	 * @return the size
+	 */
+	public int size() {
+		return (int) (writeIndex.get() - readIndex.get());
+	}
+
+	/**
+	 * Gets the number of spectra dropped because the ring was full.
+	 *
+	 * @return the dropped count
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+}
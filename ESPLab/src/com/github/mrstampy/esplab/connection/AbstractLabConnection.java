@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.connection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.mrstampy.esp.dsp.EspChannel;
+import com.github.mrstampy.esp.dsp.lab.EspWindowFunction;
+import com.github.mrstampy.esp.dsp.lab.RawEspConnection;
+import com.github.mrstampy.esp.multiconnectionsocket.ConnectionEvent;
+import com.github.mrstampy.esp.multiconnectionsocket.ConnectionEvent.State;
+import com.github.mrstampy.esp.multiconnectionsocket.ConnectionEventListener;
+import com.github.mrstampy.esp.multiconnectionsocket.MultiConnectionSocketException;
+import com.github.mrstampy.esplab.acquisition.SampleBlock;
+import com.github.mrstampy.esplab.acquisition.SampleStream;
+import com.github.mrstampy.esplab.acquisition.SampleStreamListener;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class AbstractLabConnection is the superclass of the
+ * {@link RawEspConnection}s provided by ESPLab which are not backed by a
+ * device. It manages the channels, window function, connection state and
+ * {@link ConnectionEventListener}s, firing {@link State#STARTED} and
+ * {@link State#STOPPED} as the connection is started and stopped, and the
+ * {@link SampleStreamListener}s to which subclasses push their samples.
+ */
+public abstract class AbstractLabConnection implements RawEspConnection, SampleStream {
+	private static final Logger log = LoggerFactory.getLogger(AbstractLabConnection.class);
+
+	private final String name;
+	private final List<EspChannel> channels;
+
+	private List<ConnectionEventListener> listeners = new CopyOnWriteArrayList<>();
+	private List<SampleStreamListener> streamListeners = new CopyOnWriteArrayList<>();
+
+	private volatile EspWindowFunction windowFunction;
+	private volatile boolean connected;
+
+	/**
+	 * Instantiates a new abstract lab connection.
+	 *
+	 * @param name
+	 *          the name
+	 * @param numChannels
+	 *          the number of channels, numbered from 1
+	 */
+	protected AbstractLabConnection(String name, int numChannels) {
+		if (numChannels <= 0) throw new IllegalArgumentException("Number of channels must be > 0: " + numChannels);
+
+		this.name = name;
+
+		List<EspChannel> list = new ArrayList<>(numChannels);
+		for (int i = 1; i <= numChannels; i++) {
+			list.add(new EspChannel(i, "Channel " + i));
+		}
+		channels = Collections.unmodifiableList(list);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esp.dsp.lab.RawEspConnection#start()
+	 */
+	@Override
+	public synchronized void start() throws MultiConnectionSocketException {
+		if (connected) return;
+
+		startImpl();
+		connected = true;
+		notifyConnectionEventListeners(State.STARTED);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esp.dsp.lab.RawEspConnection#stop()
+	 */
+	@Override
+	public void stop() {
+		stop(State.STOPPED);
+	}
+
+	/**
+	 * Stops the connection, notifying listeners with the specified state.
+	 *
+	 * @param state
+	 *          the state, {@link State#STOPPED} or one of the error states
+	 */
+	protected synchronized void stop(State state) {
+		if (!connected) return;
+
+		connected = false;
+		stopImpl();
+		notifyConnectionEventListeners(state);
+	}
+
+	/**
+	 * Start the implementation.
+	 *
+	 * @throws MultiConnectionSocketException
+	 *           the multi connection socket exception
+	 */
+	protected abstract void startImpl() throws MultiConnectionSocketException;
+
+	/**
+	 * Stop the implementation.
+	 */
+	protected abstract void stopImpl();
+
+	/**
+	 * Notify connection event listeners.
+	 *
+	 * @param state
+	 *          the state
+	 */
+	protected void notifyConnectionEventListeners(State state) {
+		ConnectionEvent e = new ConnectionEvent(state);
+		for (ConnectionEventListener l : listeners) {
+			try {
+				l.connectionEventPerformed(e);
+			} catch (Throwable t) {
+				log.error("Unexpected exception notifying connection event {}", state, t);
+			}
+		}
+	}
+
+	/**
+	 * Checks if there are sample stream listeners, so that subclasses need only
+	 * assemble blocks when they are wanted.
+	 *
+	 * @return true, if streamed
+	 */
+	protected boolean isStreamed() {
+		return !streamListeners.isEmpty();
+	}
+
+	/**
+	 * Notify sample stream listeners.
+	 *
+	 * @param block
+	 *          the block
+	 */
+	protected void notifySampleStreamListeners(SampleBlock block) {
+		for (SampleStreamListener l : streamListeners) {
+			try {
+				l.samplesStreamed(block);
+			} catch (Throwable t) {
+				log.error("Unexpected exception streaming samples", t);
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.github.mrstampy.esplab.acquisition.SampleStream#addSampleStreamListener
+	 * (com.github.mrstampy.esplab.acquisition.SampleStreamListener)
+	 */
+	@Override
+	public void addSampleStreamListener(SampleStreamListener l) {
+		if (l != null && !streamListeners.contains(l)) streamListeners.add(l);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.github.mrstampy.esplab.acquisition.SampleStream#removeSampleStreamListener
+	 * (com.github.mrstampy.esplab.acquisition.SampleStreamListener)
+	 */
+	@Override
+	public void removeSampleStreamListener(SampleStreamListener l) {
+		streamListeners.remove(l);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esp.dsp.lab.RawEspConnection#getCurrent(int)
+	 */
+	@Override
+	public double[][] getCurrent(int numSamples) {
+		return last(getCurrent(), numSamples);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esp.dsp.lab.RawEspConnection#getCurrentFor(int,
+	 * int)
+	 */
+	@Override
+	public double[][] getCurrentFor(int numSamples, int channelNumber) {
+		return last(getCurrentFor(channelNumber), numSamples);
+	}
+
+	private double[][] last(double[][] samples, int numSamples) {
+		double[][] trimmed = new double[samples.length][];
+		for (int i = 0; i < samples.length; i++) {
+			double[] row = samples[i];
+			trimmed[i] = row.length <= numSamples ? row : Arrays.copyOfRange(row, row.length - numSamples, row.length);
+		}
+
+		return trimmed;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esp.dsp.lab.RawEspConnection#isConnected()
+	 */
+	@Override
+	public boolean isConnected() {
+		return connected;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esp.dsp.lab.RawEspConnection#getName()
+	 */
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esp.dsp.lab.RawEspConnection#getNumChannels()
+	 */
+	@Override
+	public int getNumChannels() {
+		return channels.size();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esp.dsp.lab.RawEspConnection#getChannels()
+	 */
+	@Override
+	public List<EspChannel> getChannels() {
+		return channels;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esp.dsp.lab.RawEspConnection#getChannel(int)
+	 */
+	@Override
+	public EspChannel getChannel(int channelNumber) {
+		return channels.get(channelNumber - 1);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esp.dsp.lab.RawEspConnection#getWindowFunction()
+	 */
+	@Override
+	public EspWindowFunction getWindowFunction() {
+		return windowFunction;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.github.mrstampy.esp.dsp.lab.RawEspConnection#setWindowFunction(com.github
+	 * .mrstampy.esp.dsp.lab.EspWindowFunction)
+	 */
+	@Override
+	public void setWindowFunction(EspWindowFunction windowFunction) {
+		this.windowFunction = windowFunction;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.github.mrstampy.esp.dsp.lab.RawEspConnection#addConnectionEventListener
+	 * (com.github.mrstampy.esp.multiconnectionsocket.ConnectionEventListener)
+	 */
+	@Override
+	public void addConnectionEventListener(ConnectionEventListener l) {
+		if (l != null && !listeners.contains(l)) listeners.add(l);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.github.mrstampy.esp.dsp.lab.RawEspConnection#removeConnectionEventListener
+	 * (com.github.mrstampy.esp.multiconnectionsocket.ConnectionEventListener)
+	 */
+	@Override
+	public void removeConnectionEventListener(ConnectionEventListener l) {
+		listeners.remove(l);
+	}
+}
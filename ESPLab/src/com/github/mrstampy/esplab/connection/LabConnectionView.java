@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.connection;
+
+import java.util.List;
+
+import com.github.mrstampy.esp.dsp.EspChannel;
+import com.github.mrstampy.esp.dsp.lab.EspWindowFunction;
+import com.github.mrstampy.esp.dsp.lab.RawEspConnection;
+import com.github.mrstampy.esp.multiconnectionsocket.ConnectionEventListener;
+import com.github.mrstampy.esp.multiconnectionsocket.MultiConnectionSocketException;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class LabConnectionView is the view of a connection given to the labs of
+ * an engine, reporting a window function of its own so that the windowing of
+ * those labs may be overridden without changing the window function of the
+ * connection, which its other labs share. Everything else is delegated to the
+ * connection.
+ */
+public class LabConnectionView implements RawEspConnection {
+
+	private final RawEspConnection connection;
+	private volatile EspWindowFunction windowFunction;
+
+	/**
+	 * Instantiates a new lab connection view following the connection's window
+	 * function.
+	 *
+	 * @param connection
+	 *          the connection
+	 */
+	public LabConnectionView(RawEspConnection connection) {
+		if (connection == null) throw new IllegalArgumentException("Connection must be specified");
+
+		this.connection = connection;
+	}
+
+	/**
+	 * Gets the connection viewed, unwrapping a view.
+	 *
+	 * @param connection
+	 *          the connection or a view of it
+	 * @return the connection
+	 */
+	public static RawEspConnection unwrap(RawEspConnection connection) {
+		return connection instanceof LabConnectionView ? ((LabConnectionView) connection).getConnection() : connection;
+	}
+
+	/**
+	 * Gets the connection viewed.
+	 *
+	 * @return the connection
+	 */
+	public RawEspConnection getConnection() {
+		return connection;
+	}
+
+	/**
+	 * Returns the window function of the view or, if none, of the connection.
+	 *
+	 * @return the window function
+	 */
+	@Override
+	public EspWindowFunction getWindowFunction() {
+		EspWindowFunction wf = windowFunction;
+		return wf == null ? connection.getWindowFunction() : wf;
+	}
+
+	/**
+	 * Sets the window function of the view, leaving the connection's unchanged.
+	 *
+	 * @param wf
+	 *          the window function, null to follow the connection's
+	 */
+	@Override
+	public void setWindowFunction(EspWindowFunction wf) {
+		windowFunction = wf;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esp.dsp.lab.RawEspConnection#getCurrent()
+	 */
+	@Override
+	public double[][] getCurrent() {
+		return connection.getCurrent();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esp.dsp.lab.RawEspConnection#getCurrent(int)
+	 */
+	@Override
+	public double[][] getCurrent(int numSamples) {
+		return connection.getCurrent(numSamples);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esp.dsp.lab.RawEspConnection#getCurrentFor(int)
+	 */
+	@Override
+	public double[][] getCurrentFor(int channelNumber) {
+		return connection.getCurrentFor(channelNumber);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esp.dsp.lab.RawEspConnection#getCurrentFor(int, int)
+	 */
+	@Override
+	public double[][] getCurrentFor(int numSamples, int channelNumber) {
+		return connection.getCurrentFor(numSamples, channelNumber);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esp.dsp.lab.RawEspConnection#getName()
+	 */
+	@Override
+	public String getName() {
+		return connection.getName();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esp.dsp.lab.RawEspConnection#getNumChannels()
+	 */
+	@Override
+	public int getNumChannels() {
+		return connection.getNumChannels();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esp.dsp.lab.RawEspConnection#getChannels()
+	 */
+	@Override
+	public List<EspChannel> getChannels() {
+		return connection.getChannels();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esp.dsp.lab.RawEspConnection#getChannel(int)
+	 */
+	@Override
+	public EspChannel getChannel(int channelNumber) {
+		return connection.getChannel(channelNumber);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esp.dsp.lab.RawEspConnection#start()
+	 */
+	@Override
+	public void start() throws MultiConnectionSocketException {
+		connection.start();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esp.dsp.lab.RawEspConnection#stop()
+	 */
+	@Override
+	public void stop() {
+		connection.stop();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esp.dsp.lab.RawEspConnection#isConnected()
+	 */
+	@Override
+	public boolean isConnected() {
+		return connection.isConnected();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esp.dsp.lab.RawEspConnection#addConnectionEventListener
+	 * (com.github.mrstampy.esp.multiconnectionsocket.ConnectionEventListener)
+	 */
+	@Override
+	public void addConnectionEventListener(ConnectionEventListener l) {
+		connection.addConnectionEventListener(l);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esp.dsp.lab.RawEspConnection#removeConnectionEventListener
+	 * (com.github.mrstampy.esp.multiconnectionsocket.ConnectionEventListener)
+	 */
+	@Override
+	public void removeConnectionEventListener(ConnectionEventListener l) {
+		connection.removeConnectionEventListener(l);
+	}
+}
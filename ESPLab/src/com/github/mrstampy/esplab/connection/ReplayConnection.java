@@ -0,0 +1,357 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.connection;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rx.schedulers.Schedulers;
+
+import com.github.mrstampy.esp.multiconnectionsocket.ConnectionEvent.State;
+import com.github.mrstampy.esp.multiconnectionsocket.MultiConnectionSocketException;
+import com.github.mrstampy.esplab.acquisition.SampleBlock;
+import com.github.mrstampy.esplab.io.SessionFormat;
+import com.github.mrstampy.esplab.io.SessionReader;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class ReplayConnection serves the samples of a session recorded by a
+ * {@link com.github.mrstampy.esplab.io.SessionRecorder} as a
+ * {@link com.github.mrstampy.esp.dsp.lab.RawEspConnection}, so that the graphs
+ * can be run without hardware.<br>
+ * <br>
+ * The replay advances on a tick of its own every {@link #STREAM_TICK_MILLIS}
+ * ms, independent of how often or for how many channels the connection is
+ * read; {@link #getCurrent()} and {@link #getCurrentFor(int)} return the
+ * samples of the latest record replayed. With a positive speed the session is
+ * replayed against the clock: each tick replays the records due at (elapsed
+ * time * speed), so a speed of 1 is real time and 10 is ten times real time.
+ * With a speed of {@link #AS_FAST_AS_POSSIBLE} each tick replays record after
+ * record for the length of the tick regardless of their timestamps, making the
+ * replay a throughput benchmark of everything downstream.<br>
+ * <br>
+ * While there are
+ * {@link com.github.mrstampy.esplab.acquisition.SampleStreamListener}s each
+ * record of all channels replayed is pushed as a block of the stream, outside
+ * the connection's lock; streamed as fast as possible the listeners set the
+ * pace. Records are assumed to follow on from each other, as they do in
+ * sessions recorded from a stream; records of a single channel are not
+ * streamed. Restarting a looped session is a gap in the stream.<br>
+ * <br>
+ * {@link State#STARTED} is fired on {@link #start()} and {@link State#STOPPED}
+ * on {@link #stop()} or at the end of the session, unless looping.
+ */
+public class ReplayConnection extends AbstractLabConnection {
+	private static final Logger log = LoggerFactory.getLogger(ReplayConnection.class);
+
+	/** Replay each sample record on request, regardless of its timestamp. */
+	public static final double AS_FAST_AS_POSSIBLE = 0;
+
+	/** The period at which the replay advances. */
+	public static final long STREAM_TICK_MILLIS = 10;
+
+	private static final double[][] EMPTY = new double[0][0];
+
+	private final SessionReader reader;
+
+	private volatile double speed;
+	private volatile boolean loop;
+
+	private long startNanos;
+	private long offsetNanos;
+
+	private double[][] pending;
+	private int pendingChannel;
+	private long pendingTimestamp;
+	private boolean ended;
+	private long sessionNanos;
+
+	private double[][] all = EMPTY;
+	private Map<Integer, double[][]> byChannel = new HashMap<>();
+
+	private long streamSequence;
+	private boolean streamGap;
+	private List<SampleBlock> toStream = new ArrayList<>();
+	private rx.Subscription ticker;
+
+	/**
+	 * Instantiates a new replay connection.
+	 *
+	 * @param session
+	 *          the session file
+	 * @param speed
+	 *          the speed, a multiple of real time or {@link #AS_FAST_AS_POSSIBLE}
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	public ReplayConnection(Path session, double speed) throws IOException {
+		this(new SessionReader(session), speed);
+	}
+
+	private ReplayConnection(SessionReader reader, double speed) {
+		super(reader.getName() + " (replay)", Math.max(1, reader.getNumChannels()));
+		this.reader = reader;
+		setSpeed(speed);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esplab.connection.AbstractLabConnection#startImpl()
+	 */
+	@Override
+	protected synchronized void startImpl() throws MultiConnectionSocketException {
+		reader.rewind();
+		all = EMPTY;
+		byChannel.clear();
+		ended = false;
+		sessionNanos = 0;
+		offsetNanos = 0;
+		startNanos = System.nanoTime();
+		streamSequence = 0;
+		streamGap = false;
+
+		try {
+			loadNext();
+		} catch (IOException e) {
+			throw new MultiConnectionSocketException("Could not read " + reader.getPath(), e);
+		}
+
+		ticker = Schedulers.io().schedulePeriodically(t -> tick(), STREAM_TICK_MILLIS, STREAM_TICK_MILLIS,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esplab.connection.AbstractLabConnection#stopImpl()
+	 */
+	@Override
+	protected void stopImpl() {
+		if (ticker != null) ticker.unsubscribe();
+		ticker = null;
+	}
+
+	private void tick() {
+		try {
+			if (speed == AS_FAST_AS_POSSIBLE) {
+				long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(STREAM_TICK_MILLIS);
+				while (advance() && System.nanoTime() < deadline) {
+					stream();
+				}
+			} else {
+				advance();
+			}
+
+			stream();
+		} catch (Throwable e) {
+			log.error("Unexpected exception", e);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esp.dsp.lab.RawEspConnection#getCurrent()
+	 */
+	@Override
+	public synchronized double[][] getCurrent() {
+		return all;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esp.dsp.lab.RawEspConnection#getCurrentFor(int)
+	 */
+	@Override
+	public synchronized double[][] getCurrentFor(int channelNumber) {
+		double[][] samples = byChannel.get(channelNumber);
+		if (samples != null) return samples;
+
+		int row = channelNumber - 1;
+		return row >= 0 && row < all.length ? new double[][] { all[row] } : EMPTY;
+	}
+
+	// replays one record as fast as possible, else those due; false once ended
+	private synchronized boolean advance() {
+		if (!isConnected() || ended) return false;
+
+		try {
+			if (speed == AS_FAST_AS_POSSIBLE) {
+				apply();
+				loadNext();
+			} else {
+				long now = offsetNanos + (long) ((System.nanoTime() - startNanos) * speed);
+				while (pending != null && pendingTimestamp <= now) {
+					apply();
+					loadNext();
+				}
+			}
+		} catch (IOException e) {
+			log.error("Unexpected exception reading {}", reader.getPath(), e);
+			pending = null;
+		}
+
+		if (pending == null) endOfSession();
+
+		return !ended;
+	}
+
+	private void apply() {
+		if (pending == null) return;
+
+		sessionNanos = pendingTimestamp;
+		if (pendingChannel < 0) {
+			all = pending;
+			byChannel.clear();
+			queueStream(pending);
+		} else {
+			byChannel.put(pendingChannel, pending);
+		}
+	}
+
+	private void queueStream(double[][] samples) {
+		if (!isStreamed() || samples.length == 0) return;
+
+		SampleBlock block = new SampleBlock(streamSequence, samples, streamGap ? SampleBlock.UNKNOWN : 0);
+		streamSequence += block.getLength();
+		streamGap = false;
+
+		toStream.add(block);
+	}
+
+	// ticker thread only, outside the lock
+	private void stream() {
+		if (toStream.isEmpty()) return;
+
+		for (SampleBlock block : toStream) {
+			notifySampleStreamListeners(block);
+		}
+		toStream.clear();
+	}
+
+	private void loadNext() throws IOException {
+		pending = null;
+		while (reader.next()) {
+			if (reader.getType() != SessionFormat.SAMPLES) continue;
+
+			pending = reader.read();
+			pendingChannel = reader.getChannel();
+			pendingTimestamp = reader.getTimestamp();
+			return;
+		}
+	}
+
+	private void endOfSession() {
+		if (loop) {
+			streamGap = true;
+			reader.rewind();
+			startNanos = System.nanoTime();
+			offsetNanos = 0;
+			try {
+				loadNext();
+			} catch (IOException e) {
+				log.error("Unexpected exception reading {}", reader.getPath(), e);
+			}
+
+			if (pending != null) return;
+		}
+
+		ended = true;
+		log.info("End of session {}", reader.getPath());
+
+		// not on the polling thread, which may be holding the connection
+		Schedulers.io().schedule(t -> stop());
+	}
+
+	/**
+	 * Gets the speed.
+	 *
+	 * @return the speed
+	 */
+	public double getSpeed() {
+		return speed;
+	}
+
+	/**
+	 * Sets the speed, a multiple of real time or {@link #AS_FAST_AS_POSSIBLE}.
+	 * May be changed during replay.
+	 *
+	 * @param speed
+	 *          the new speed
+	 */
+	public synchronized void setSpeed(double speed) {
+		if (speed < 0) throw new IllegalArgumentException("Speed must be >= 0: " + speed);
+
+		long now = System.nanoTime();
+		offsetNanos += (long) ((now - startNanos) * this.speed);
+		startNanos = now;
+
+		this.speed = speed;
+	}
+
+	/**
+	 * Checks if the session is replayed continuously.
+	 *
+	 * @return true, if looping
+	 */
+	public boolean isLoop() {
+		return loop;
+	}
+
+	/**
+	 * If true the session restarts from the beginning when it ends, rather than
+	 * stopping the connection.
+	 *
+	 * @param loop
+	 *          the new loop
+	 */
+	public void setLoop(boolean loop) {
+		this.loop = loop;
+	}
+
+	/**
+	 * Gets the nanos into the session of the most recent sample record served.
+	 *
+	 * @return the session position
+	 */
+	public synchronized long getSessionNanos() {
+		return sessionNanos;
+	}
+
+	/**
+	 * Closes the session file. The connection cannot be restarted.
+	 *
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	public void close() throws IOException {
+		stop();
+		reader.close();
+	}
+}
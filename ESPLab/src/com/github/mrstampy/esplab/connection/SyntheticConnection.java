@@ -0,0 +1,406 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.connection;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rx.Scheduler;
+import rx.Scheduler.Inner;
+import rx.functions.Action1;
+import rx.schedulers.Schedulers;
+
+import com.github.mrstampy.esp.multiconnectionsocket.ConnectionEvent.State;
+import com.github.mrstampy.esp.multiconnectionsocket.MultiConnectionSocketException;
+import com.github.mrstampy.esplab.acquisition.AcquisitionHub;
+import com.github.mrstampy.esplab.acquisition.SampleBlock;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class SyntheticConnection generates multi channel signals at a
+ * configurable sample rate for load and soak testing the graphs without a
+ * device. Each channel's signal is the sum of its sine waves plus optional
+ * gaussian noise and periodic bursts, and may be interrupted by periodic
+ * dropouts during which the channel flatlines at zero.<br>
+ * <br>
+ * Samples are generated against the clock every {@link #TICK_MILLIS} ms into
+ * a history of the last buffer size samples per channel, which is what
+ * {@link #getCurrent()} and {@link #getCurrentFor(int)} return. Each tick's
+ * new samples are also pushed to any
+ * {@link com.github.mrstampy.esplab.acquisition.SampleStreamListener}s.<br>
+ * <br>
+ * Connection failures can be simulated on demand with
+ * {@link #simulateError(State)} or at random with
+ * {@link #setMeanErrorInterval(long)}.
+ * 
+ * <pre>
+ * SyntheticConnection sc = new SyntheticConnection(&quot;Synthetic&quot;, 8, 512, 1024);
+ * sc.addSine(SyntheticConnection.ALL_CHANNELS, 10, 1);
+ * sc.addSine(2, 22.5, 0.5);
+ * sc.setNoise(0.2);
+ * sc.setBurst(40, 2, 5000, 500);
+ * </pre>
+ */
+public class SyntheticConnection extends AbstractLabConnection {
+	private static final Logger log = LoggerFactory.getLogger(SyntheticConnection.class);
+
+	/**
+	 * Specifies all channels when adding a sine or getting the current samples,
+	 * as for the {@link AcquisitionHub}.
+	 */
+	public static final int ALL_CHANNELS = AcquisitionHub.ALL_CHANNELS;
+
+	/** The period of sample generation. */
+	public static final long TICK_MILLIS = 10;
+
+	private static final double TWO_PI = 2 * Math.PI;
+
+	private final double sampleRate;
+	private final double[][] history;
+
+	private int historyPos;
+	private long sampleIndex;
+	private long startNanos;
+
+	private List<Sine> sines = new CopyOnWriteArrayList<>();
+
+	private volatile double noise;
+
+	private volatile double burstFrequency;
+	private volatile double burstAmplitude;
+	private volatile long burstPeriod;
+	private volatile long burstDuration;
+
+	private volatile long dropoutPeriod;
+	private volatile long dropoutDuration;
+
+	private volatile long meanErrorInterval;
+	private long nextErrorNanos;
+
+	private Random random = new Random();
+
+	private Scheduler scheduler = Schedulers.io();
+	private rx.Subscription generator;
+
+	/**
+	 * Instantiates a new synthetic connection.
+	 *
+	 * @param name
+	 *          the name
+	 * @param numChannels
+	 *          the number of channels
+	 * @param sampleRate
+	 *          the sample rate, in Hz
+	 * @param bufferSize
+	 *          the number of samples per channel returned by
+	 *          {@link #getCurrent()}
+	 */
+	public SyntheticConnection(String name, int numChannels, double sampleRate, int bufferSize) {
+		super(name, numChannels);
+
+		if (sampleRate <= 0) throw new IllegalArgumentException("Sample rate must be > 0: " + sampleRate);
+		if (bufferSize <= 0) throw new IllegalArgumentException("Buffer size must be > 0: " + bufferSize);
+
+		this.sampleRate = sampleRate;
+		history = new double[numChannels][bufferSize];
+	}
+
+	/**
+	 * Adds a sine wave to the signal of a channel.
+	 *
+	 * @param channel
+	 *          the channel, 1 to the number of channels, or
+	 *          {@link #ALL_CHANNELS}
+	 * @param frequency
+	 *          the frequency in Hz
+	 * @param amplitude
+	 *          the amplitude
+	 */
+	public void addSine(int channel, double frequency, double amplitude) {
+		if (channel != ALL_CHANNELS) checkChannel(channel);
+
+		sines.add(new Sine(channel, frequency, amplitude));
+	}
+
+	/**
+	 * Removes all sine waves.
+	 */
+	public void clearSines() {
+		sines.clear();
+	}
+
+	/**
+	 * Sets the standard deviation of the gaussian noise added to every channel.
+	 *
+	 * @param amplitude
+	 *          the amplitude, 0 for none
+	 */
+	public void setNoise(double amplitude) {
+		noise = amplitude;
+	}
+
+	/**
+	 * Adds a sine burst to every channel for a duration at the start of each
+	 * period.
+	 *
+	 * @param frequency
+	 *          the frequency of the burst in Hz
+	 * @param amplitude
+	 *          the amplitude of the burst
+	 * @param periodMillis
+	 *          the period, 0 for no bursts
+	 * @param durationMillis
+	 *          the duration of each burst
+	 */
+	public void setBurst(double frequency, double amplitude, long periodMillis, long durationMillis) {
+		burstFrequency = frequency;
+		burstAmplitude = amplitude;
+		burstDuration = durationMillis;
+		burstPeriod = periodMillis;
+	}
+
+	/**
+	 * Flatlines every channel for a duration at the start of each period.
+	 *
+	 * @param periodMillis
+	 *          the period, 0 for no dropouts
+	 * @param durationMillis
+	 *          the duration of each dropout
+	 */
+	public void setDropout(long periodMillis, long durationMillis) {
+		dropoutDuration = durationMillis;
+		dropoutPeriod = periodMillis;
+	}
+
+	/**
+	 * Sets the mean interval between randomly simulated connection errors,
+	 * which are exponentially distributed and equally likely to be
+	 * {@link State#ERROR_STOPPED} or {@link State#ERROR_UNBOUND}.
+	 *
+	 * @param millis
+	 *          the mean interval, 0 for no random errors
+	 */
+	public synchronized void setMeanErrorInterval(long millis) {
+		meanErrorInterval = millis;
+		scheduleNextError();
+	}
+
+	/**
+	 * Seeds the noise, dropout and error randomness for a reproducible run.
+	 *
+	 * @param seed
+	 *          the seed
+	 */
+	public void setSeed(long seed) {
+		random.setSeed(seed);
+	}
+
+	/**
+	 * Simulates the loss of the connection, stopping it and notifying listeners
+	 * with the specified state.
+	 *
+	 * @param state
+	 *          the state, typically {@link State#ERROR_STOPPED} or
+	 *          {@link State#ERROR_UNBOUND}
+	 */
+	public void simulateError(State state) {
+		log.info("Simulating {} on {}", state, getName());
+		stop(state);
+	}
+
+	/**
+	 * Gets the sample rate.
+	 *
+	 * @return the sample rate
+	 */
+	public double getSampleRate() {
+		return sampleRate;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esplab.connection.AbstractLabConnection#startImpl()
+	 */
+	@Override
+	protected void startImpl() throws MultiConnectionSocketException {
+		synchronized (history) {
+			for (double[] row : history) {
+				Arrays.fill(row, 0);
+			}
+			historyPos = 0;
+			sampleIndex = 0;
+			startNanos = System.nanoTime();
+		}
+
+		scheduleNextError();
+
+		generator = scheduler.schedulePeriodically(new Action1<Scheduler.Inner>() {
+
+			@Override
+			public void call(Inner t1) {
+				try {
+					generate();
+				} catch (Throwable e) {
+					log.error("Unexpected exception", e);
+				}
+			}
+		}, 0, TICK_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esplab.connection.AbstractLabConnection#stopImpl()
+	 */
+	@Override
+	protected void stopImpl() {
+		if (generator != null) generator.unsubscribe();
+		generator = null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esp.dsp.lab.RawEspConnection#getCurrent()
+	 */
+	@Override
+	public double[][] getCurrent() {
+		synchronized (history) {
+			double[][] current = new double[history.length][];
+			for (int i = 0; i < history.length; i++) {
+				current[i] = copy(i);
+			}
+
+			return current;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esp.dsp.lab.RawEspConnection#getCurrentFor(int)
+	 */
+	@Override
+	public double[][] getCurrentFor(int channelNumber) {
+		if (channelNumber == ALL_CHANNELS) return getCurrent();
+		checkChannel(channelNumber);
+
+		synchronized (history) {
+			return new double[][] { copy(channelNumber - 1) };
+		}
+	}
+
+	private void checkChannel(int channel) {
+		if (channel < 1 || channel > history.length) {
+			throw new IllegalArgumentException("Channel must be 1 - " + history.length + " or ALL_CHANNELS: " + channel);
+		}
+	}
+
+	private double[] copy(int row) {
+		double[] src = history[row];
+		double[] dest = new double[src.length];
+
+		int first = src.length - historyPos;
+		System.arraycopy(src, historyPos, dest, 0, first);
+		System.arraycopy(src, 0, dest, first, historyPos);
+
+		return dest;
+	}
+
+	private void generate() {
+		if (isErrorDue()) {
+			simulateError(random.nextBoolean() ? State.ERROR_STOPPED : State.ERROR_UNBOUND);
+			return;
+		}
+
+		SampleBlock block = null;
+		synchronized (history) {
+			long due = (long) ((System.nanoTime() - startNanos) * sampleRate / 1e9);
+			long from = Math.max(sampleIndex, due - history[0].length);
+
+			double[][] streamed = isStreamed() && due > from ? new double[history.length][(int) (due - from)] : null;
+
+			for (long idx = from; idx < due; idx++) {
+				double t = idx / sampleRate;
+				for (int ch = 0; ch < history.length; ch++) {
+					double val = sample(ch + 1, t);
+					history[ch][historyPos] = val;
+					if (streamed != null) streamed[ch][(int) (idx - from)] = val;
+				}
+				historyPos = (historyPos + 1) % history[0].length;
+			}
+
+			// samples beyond the history are never generated should a tick be late
+			if (streamed != null) block = new SampleBlock(from, streamed, from - sampleIndex);
+			sampleIndex = due;
+		}
+
+		if (block != null) notifySampleStreamListeners(block);
+	}
+
+	private double sample(int channel, double t) {
+		long millis = (long) (t * 1000);
+
+		long dp = dropoutPeriod;
+		if (dp > 0 && millis % dp < dropoutDuration) return 0;
+
+		double val = 0;
+		for (Sine s : sines) {
+			if (s.channel == ALL_CHANNELS || s.channel == channel) val += s.amplitude * Math.sin(TWO_PI * s.frequency * t);
+		}
+
+		long bp = burstPeriod;
+		if (bp > 0 && millis % bp < burstDuration) val += burstAmplitude * Math.sin(TWO_PI * burstFrequency * t);
+
+		double n = noise;
+		if (n > 0) val += n * random.nextGaussian();
+
+		return val;
+	}
+
+	private synchronized boolean isErrorDue() {
+		return meanErrorInterval > 0 && System.nanoTime() >= nextErrorNanos;
+	}
+
+	private synchronized void scheduleNextError() {
+		if (meanErrorInterval <= 0) return;
+
+		double interval = -Math.log(1 - random.nextDouble()) * meanErrorInterval;
+		nextErrorNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos((long) interval);
+	}
+
+	private static class Sine {
+		final int channel;
+		final double frequency;
+		final double amplitude;
+
+		Sine(int channel, double frequency, double amplitude) {
+			this.channel = channel;
+			this.frequency = frequency;
+			this.amplitude = amplitude;
+		}
+	}
+}
@@ -0,0 +1,366 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.dsp;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class BaselineEstimator estimates the mean and variance of each band of
+ * a stream of spectra incrementally, in O(bands) per spectrum and without
+ * buffering, so that spectra can be expressed as per band z-scores.<br>
+ * <br>
+ * In {@link BaselineMode#COUNT} and {@link BaselineMode#DURATION} modes the
+ * statistics are Welford's running mean and variance over the spectra
+ * received from {@link #start()} until the count or duration is reached, at
+ * which point the baseline is frozen and the completion callback invoked. In
+ * {@link BaselineMode#CONTINUOUS} mode they are an exponentially weighted
+ * moving mean and variance with the smoothing factor alpha, and the baseline
+ * follows the signal for as long as it is started.<br>
+ * <br>
+ * Spectra are {@link #update(double[])}d on the DSP thread and read from
+ * any other; access is synchronized, which costs an uncontended lock per
+ * spectrum.
+ */
+public class BaselineEstimator {
+
+	/** The default duration, as for the lab's own baseline calculation. */
+	public static final long DEFAULT_DURATION = 10000;
+
+	/** The default number of spectra. */
+	public static final int DEFAULT_COUNT = 100;
+
+	/** The default smoothing factor for continuous mode. */
+	public static final double DEFAULT_ALPHA = 0.05;
+
+	private BaselineMode mode = BaselineMode.DURATION;
+	private int count = DEFAULT_COUNT;
+	private long durationNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_DURATION);
+	private double alpha = DEFAULT_ALPHA;
+
+	private double[] mean = new double[0];
+	private double[] m2 = new double[0];
+	private long n;
+	private long startNanos;
+
+	private boolean calculating;
+	private boolean complete;
+
+	private Runnable completion;
+
+	/**
+	 * Starts a new calculation, discarding any previous baseline.
+	 */
+	public synchronized void start() {
+		clear();
+		calculating = true;
+	}
+
+	/**
+	 * Stops calculating. In count or duration modes any partial baseline is
+	 * kept as is; no completion callback is invoked.
+	 */
+	public synchronized void stop() {
+		calculating = false;
+		complete = n > 0;
+	}
+
+	/**
+	 * Stops calculating and discards the baseline.
+	 */
+	public synchronized void reset() {
+		clear();
+	}
+
+	/**
+	 * Updates the statistics with a spectrum if calculating. A spectrum of a
+	 * different length to the last restarts the statistics.
+	 *
+	 * @param spectrum
+	 *          the spectrum
+	 */
+	public void update(double[] spectrum) {
+		Runnable done = null;
+
+		synchronized (this) {
+			if (!calculating) return;
+
+			if (mean.length != spectrum.length) {
+				mean = new double[spectrum.length];
+				m2 = new double[spectrum.length];
+				n = 0;
+			}
+
+			if (n == 0) startNanos = System.nanoTime();
+			n++;
+
+			if (mode == BaselineMode.CONTINUOUS) {
+				exponential(spectrum);
+			} else {
+				welford(spectrum);
+				if (isWindowComplete()) {
+					calculating = false;
+					complete = true;
+					done = completion;
+				}
+			}
+		}
+
+		if (done != null) done.run();
+	}
+
+	private void welford(double[] spectrum) {
+		for (int i = 0; i < spectrum.length; i++) {
+			double delta = spectrum[i] - mean[i];
+			mean[i] += delta / n;
+			m2[i] += delta * (spectrum[i] - mean[i]);
+		}
+	}
+
+	// m2 holds the variance rather than the sum of squares in this mode
+	private void exponential(double[] spectrum) {
+		if (n == 1) {
+			System.arraycopy(spectrum, 0, mean, 0, spectrum.length);
+			Arrays.fill(m2, 0);
+			return;
+		}
+
+		for (int i = 0; i < spectrum.length; i++) {
+			double diff = spectrum[i] - mean[i];
+			double incr = alpha * diff;
+			mean[i] += incr;
+			m2[i] = (1 - alpha) * (m2[i] + diff * incr);
+		}
+	}
+
+	private boolean isWindowComplete() {
+		if (mode == BaselineMode.COUNT) return n >= count;
+
+		return System.nanoTime() - startNanos >= durationNanos;
+	}
+
+	/**
+	 * Writes the z-score of each band of the spectrum against the baseline,
+	 * 0 for bands with no variance. With no baseline the spectrum is copied.
+	 *
+	 * @param spectrum
+	 *          the spectrum
+	 * @param dest
+	 *          the destination, at least as long as the spectrum
+	 */
+	public synchronized void zScores(double[] spectrum, double[] dest) {
+		if (n == 0 || mean.length != spectrum.length) {
+			System.arraycopy(spectrum, 0, dest, 0, spectrum.length);
+			return;
+		}
+
+		for (int i = 0; i < spectrum.length; i++) {
+			double sd = Math.sqrt(variance(i));
+			dest[i] = sd == 0 ? 0 : (spectrum[i] - mean[i]) / sd;
+		}
+	}
+
+	/**
+	 * Writes each band of the spectrum less its baseline mean. With no baseline
+	 * the spectrum is copied.
+	 *
+	 * @param spectrum
+	 *          the spectrum
+	 * @param dest
+	 *          the destination, at least as long as the spectrum
+	 */
+	public synchronized void subtract(double[] spectrum, double[] dest) {
+		if (n == 0 || mean.length != spectrum.length) {
+			System.arraycopy(spectrum, 0, dest, 0, spectrum.length);
+			return;
+		}
+
+		for (int i = 0; i < spectrum.length; i++) {
+			dest[i] = spectrum[i] - mean[i];
+		}
+	}
+
+	/**
+	 * Copies the baseline mean of each band.
+	 *
+	 * @return the means, empty if there is no baseline
+	 */
+	public synchronized double[] getMeans() {
+		return n == 0 ? new double[0] : mean.clone();
+	}
+
+	/**
+	 * Copies the baseline variance of each band.
+	 *
+	 * @return the variances, empty if there is no baseline
+	 */
+	public synchronized double[] getVariances() {
+		double[] variances = new double[n == 0 ? 0 : mean.length];
+		for (int i = 0; i < variances.length; i++) {
+			variances[i] = variance(i);
+		}
+
+		return variances;
+	}
+
+	private double variance(int band) {
+		if (mode == BaselineMode.CONTINUOUS) return m2[band];
+
+		return n < 2 ? 0 : m2[band] / (n - 1);
+	}
+
+	/**
+	 * Checks if there is a baseline, complete or not.
+	 *
+	 * @return true, if has baseline
+	 */
+	public synchronized boolean hasBaseline() {
+		return n > 0;
+	}
+
+	/**
+	 * Checks if calculating.
+	 *
+	 * @return true, if calculating
+	 */
+	public synchronized boolean isCalculating() {
+		return calculating;
+	}
+
+	/**
+	 * Checks if a count or duration baseline has completed.
+	 *
+	 * @return true, if complete
+	 */
+	public synchronized boolean isComplete() {
+		return complete;
+	}
+
+	/**
+	 * Gets the number of spectra in the baseline.
+	 *
+	 * @return the sample count
+	 */
+	public synchronized long getSampleCount() {
+		return n;
+	}
+
+	/**
+	 * Sets the callback invoked on the updating thread when a count or
+	 * duration baseline completes.
+	 *
+	 * @param completion
+	 *          the new completion callback
+	 */
+	public synchronized void setCompletion(Runnable completion) {
+		this.completion = completion;
+	}
+
+	/**
+	 * Gets the mode.
+	 *
+	 * @return the mode
+	 */
+	public synchronized BaselineMode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Sets the mode, discarding any baseline.
+	 *
+	 * @param mode
+	 *          the new mode
+	 */
+	public synchronized void setMode(BaselineMode mode) {
+		if (mode == null) throw new IllegalArgumentException("Mode must be specified");
+
+		this.mode = mode;
+		clear();
+	}
+
+	/**
+	 * Sets the number of spectra of a {@link BaselineMode#COUNT} baseline.
+	 *
+	 * @param count
+	 *          the new count
+	 */
+	public synchronized void setCount(int count) {
+		if (count <= 0) throw new IllegalArgumentException("Count must be > 0: " + count);
+		this.count = count;
+	}
+
+	/**
+	 * Gets the count.
+	 *
+	 * @return the count
+	 */
+	public synchronized int getCount() {
+		return count;
+	}
+
+	/**
+	 * Sets the duration of a {@link BaselineMode#DURATION} baseline.
+	 *
+	 * @param millis
+	 *          the new duration
+	 */
+	public synchronized void setDuration(long millis) {
+		if (millis <= 0) throw new IllegalArgumentException("Duration must be > 0: " + millis);
+		durationNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+
+	/**
+	 * Gets the duration.
+	 *
+	 * @return the duration in millis
+	 */
+	public synchronized long getDuration() {
+		return TimeUnit.NANOSECONDS.toMillis(durationNanos);
+	}
+
+	/**
+	 * Sets the smoothing factor of a {@link BaselineMode#CONTINUOUS} baseline;
+	 * larger values adapt faster.
+	 *
+	 * @param alpha
+	 *          the new alpha, 0 - 1 exclusive of 0
+	 */
+	public synchronized void setAlpha(double alpha) {
+		if (alpha <= 0 || alpha > 1) throw new IllegalArgumentException("Alpha must be > 0 and <= 1: " + alpha);
+		this.alpha = alpha;
+	}
+
+	/**
+	 * Gets the alpha.
+	 *
+	 * @return the alpha
+	 */
+	public synchronized double getAlpha() {
+		return alpha;
+	}
+
+	private void clear() {
+		calculating = false;
+		complete = false;
+		n = 0;
+		Arrays.fill(mean, 0);
+		Arrays.fill(m2, 0);
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.dsp;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class BinAggregator reduces a range of spectrum bins to a smaller number
+ * of buckets, ie. one per bar or pixel the spectrum is displayed in, by the
+ * {@link AggregationMode}. Bins are divided as evenly as possible; when there
+ * are no more bins than buckets each bin is its own bucket. Nothing is
+ * allocated.
+ */
+public class BinAggregator {
+
+	private volatile AggregationMode mode;
+
+	/**
+	 * Instantiates a new bin aggregator.
+	 *
+	 * @param mode
+	 *          the mode
+	 */
+	public BinAggregator(AggregationMode mode) {
+		setMode(mode);
+	}
+
+	/**
+	 * Aggregates the bins from (inclusive) to (exclusive) into the first
+	 * buckets elements of the destination.
+	 *
+	 * @param bins
+	 *          the bins
+	 * @param from
+	 *          the first bin
+	 * @param to
+	 *          the end of the bins
+	 * @param dest
+	 *          the destination
+	 * @param buckets
+	 *          the number of buckets, no more than the number of bins
+	 */
+	public void aggregate(double[] bins, int from, int to, double[] dest, int buckets) {
+		int num = to - from;
+		if (buckets > num) throw new IllegalArgumentException("More buckets than bins: " + buckets + " > " + num);
+
+		boolean max = mode == AggregationMode.MAX;
+		for (int b = 0; b < buckets; b++) {
+			int start = from + bucketStart(b, num, buckets);
+			int end = from + bucketStart(b + 1, num, buckets);
+
+			double val = max ? -Double.MAX_VALUE : 0;
+			for (int i = start; i < end; i++) {
+				val = max ? Math.max(val, bins[i]) : val + bins[i];
+			}
+
+			dest[b] = max ? val : val / (end - start);
+		}
+	}
+
+	/**
+	 * Returns the offset of the first bin of the bucket.
+	 *
+	 * @param bucket
+	 *          the bucket
+	 * @param bins
+	 *          the number of bins
+	 * @param buckets
+	 *          the number of buckets
+	 * @return the offset of the first bin
+	 */
+	public static int bucketStart(int bucket, int bins, int buckets) {
+		return (int) ((long) bucket * bins / buckets);
+	}
+
+	/**
+	 * Gets the mode.
+	 *
+	 * @return the mode
+	 */
+	public AggregationMode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Sets the mode.
+	 *
+	 * @param mode
+	 *          the new mode
+	 */
+	public void setMode(AggregationMode mode) {
+		if (mode == null) throw new IllegalArgumentException("Mode must be specified");
+		this.mode = mode;
+	}
+}
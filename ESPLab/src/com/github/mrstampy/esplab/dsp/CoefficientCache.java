@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.dsp;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class CoefficientCache is a bounded, least recently used cache of
+ * precomputed coefficient tables keyed by the configuration which produced
+ * them, so that flipping back and forth between settings reuses tables rather
+ * than recomputing them. Tables are computed outside the cache's lock, so a
+ * lookup never waits on another's computation; two concurrent misses of the
+ * same key may both compute, the last table computed being kept. Cached
+ * tables are shared and must not be modified.
+ *
+ * @param <K>
+ *          the key type, which must implement equals and hashCode
+ */
+public class CoefficientCache<K> {
+
+	private final int maxEntries;
+	private final Map<K, double[]> tables;
+
+	private long hits;
+	private long misses;
+
+	/**
+	 * Instantiates a new coefficient cache.
+	 *
+	 * @param maxEntries
+	 *          the maximum number of tables kept
+	 */
+	public CoefficientCache(int maxEntries) {
+		if (maxEntries <= 0) throw new IllegalArgumentException("Max entries must be > 0: " + maxEntries);
+
+		this.maxEntries = maxEntries;
+		tables = new LinkedHashMap<K, double[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, double[]> eldest) {
+				return size() > CoefficientCache.this.maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Gets the table for the key, computing and caching it if absent.
+	 *
+	 * @param key
+	 *          the key
+	 * @param compute
+	 *          computes the table for the key
+	 * @return the table
+	 */
+	public double[] get(K key, Function<K, double[]> compute) {
+		synchronized (tables) {
+			double[] table = tables.get(key);
+			if (table != null) {
+				hits++;
+				return table;
+			}
+
+			misses++;
+		}
+
+		double[] table = compute.apply(key);
+
+		synchronized (tables) {
+			tables.put(key, table);
+		}
+
+		return table;
+	}
+
+	/**
+	 * Discards all tables.
+	 */
+	public void clear() {
+		synchronized (tables) {
+			tables.clear();
+		}
+	}
+
+	/**
+	 * Gets the number of tables cached.
+	 *
+	 * @return the size
+	 */
+	public int size() {
+		synchronized (tables) {
+			return tables.size();
+		}
+	}
+
+	/**
+	 * Gets the max entries.
+	 *
+	 * @return the max entries
+	 */
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * Gets the number of lookups which found their table cached.
+	 *
+	 * @return the hits
+	 */
+	public long getHits() {
+		synchronized (tables) {
+			return hits;
+		}
+	}
+
+	/**
+	 * Gets the number of lookups which computed their table.
+	 *
+	 * @return the misses
+	 */
+	public long getMisses() {
+		synchronized (tables) {
+			return misses;
+		}
+	}
+}
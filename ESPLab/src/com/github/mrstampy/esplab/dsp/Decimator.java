@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.dsp;
+
+import java.util.function.DoubleConsumer;
+
+// TODO: Auto-generated Javadoc
+/**
+ * A Decimator reduces a stream of raw samples to display resolution before it
+ * is handed to a graph. Implementations are stateful across calls to
+ * {@link #decimate(double[], DoubleConsumer)} so that buckets may span sample
+ * blocks, and are intended to be driven by a single thread.
+ */
+public interface Decimator {
+
+	/**
+	 * Decimate the samples, passing each resulting point to the consumer in
+	 * order.
+	 *
+	 * @param samples
+	 *          the samples
+	 * @param out
+	 *          the consumer of the decimated points
+	 */
+	void decimate(double[] samples, DoubleConsumer out);
+
+	/**
+	 * Sets the number of raw samples represented by each bucket.
+	 *
+	 * @param factor
+	 *          the new factor, > 0
+	 */
+	void setFactor(int factor);
+
+	/**
+	 * Gets the number of raw samples represented by each bucket.
+	 *
+	 * @return the factor
+	 */
+	int getFactor();
+
+	/**
+	 * Discards any partially filled bucket.
+	 */
+	void reset();
+}
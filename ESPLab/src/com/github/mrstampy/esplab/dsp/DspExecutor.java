@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.dsp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.mrstampy.esp.dsp.lab.Lab;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class DspExecutor provides the fork join pool shared by all
+ * {@link DspPipeline}s, sized to the number of available cores. Pipelines
+ * drain on the pool rather than on threads of their own, and the per channel
+ * {@link Lab#process(double[][])} calls for a single acquisition tick are
+ * forked across the pool and joined before rendering.
+ */
+public class DspExecutor {
+	private static final Logger log = LoggerFactory.getLogger(DspExecutor.class);
+
+	private static final AtomicInteger threadCount = new AtomicInteger();
+
+	private static final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+			p -> createThread(p), (t, e) -> log.error("Unexpected exception on " + t.getName(), e), true);
+
+	private DspExecutor() {
+	}
+
+	/**
+	 * Gets the shared pool.
+	 *
+	 * @return the pool
+	 */
+	public static ForkJoinPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * Executes the task asynchronously on the shared pool.
+	 *
+	 * @param task
+	 *          the task
+	 */
+	public static void execute(Runnable task) {
+		pool.execute(task);
+	}
+
+	/**
+	 * Processes each block with its lab in parallel, returning once all have
+	 * completed. Must be called from a task running on the shared pool. Null
+	 * blocks are skipped.
+	 *
+	 * @param labs
+	 *          the labs
+	 * @param blocks
+	 *          the blocks, one per lab
+	 */
+	public static void processAll(List<Lab> labs, double[][][] blocks) {
+		List<ForkJoinTask<?>> tasks = new ArrayList<>(labs.size());
+		for (int i = 0; i < labs.size(); i++) {
+			if (blocks[i] == null) continue;
+
+			Lab lab = labs.get(i);
+			double[][] block = blocks[i];
+			tasks.add(ForkJoinTask.adapt(() -> lab.process(block)));
+		}
+
+		ForkJoinTask.invokeAll(tasks);
+	}
+
+	private static ForkJoinWorkerThread createThread(ForkJoinPool p) {
+		ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+		t.setName("ESPLab DSP-" + threadCount.incrementAndGet());
+		t.setDaemon(true);
+
+		return t;
+	}
+}
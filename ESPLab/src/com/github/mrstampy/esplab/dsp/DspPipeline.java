@@ -0,0 +1,530 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.dsp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.mrstampy.esp.dsp.lab.Lab;
+import com.github.mrstampy.esp.dsp.lab.SignalProcessedListener;
+import com.github.mrstampy.esplab.buffer.SpectrumBuffer;
+import com.github.mrstampy.esplab.io.AsyncExporter;
+import com.github.mrstampy.esplab.io.SessionRecorder;
+import com.github.mrstampy.esplab.metrics.LatencyHistogram;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class DspPipeline decouples the acquisition of samples from their
+ * processing by one or more {@link Lab}s. The pipeline has four stages:<br>
+ * <br>
+ * <ol>
+ * <li>acquisition: the polling thread calls {@link #submit(double[][])}, which
+ * never blocks</li>
+ * <li>a bounded {@link HandOff} to the DSP stage, either
+ * {@link HandOffPolicy#LATEST_WINS} or {@link HandOffPolicy#QUEUE_ALL}</li>
+ * <li>the DSP stage, draining the hand off on the shared {@link DspExecutor}
+ * pool and calling {@link Lab#process(double[][])}. Any {@link LabConfig}
+ * published since the last block is applied to the labs first. Blocks are processed one
+ * at a time per pipeline; with several labs each block is fanned out and the
+ * labs processed in parallel, joined before rendering</li>
+ * <li>an optional {@link BaselineEstimator} per lab, updated with each raw
+ * spectrum, against which the spectrum is displayed as z-scores or less the
+ * baseline mean</li>
+ * <li>a {@link SpectrumAverager} per lab smoothing the spectra for display,
+ * passing them through unchanged by default. Recorded spectra are neither
+ * baselined nor smoothed</li>
+ * <li>a preallocated {@link SpectrumBuffer} per lab as the render hand off;
+ * the render request is invoked at most once per pending tick and the
+ * renderer collects the latest spectra with {@link #pollRender(int)}</li>
+ * </ol>
+ * The depth and dropped count of each hand off are available so that queueing
+ * is visible.
+ */
+public class DspPipeline {
+	private static final Logger log = LoggerFactory.getLogger(DspPipeline.class);
+
+	/** The default capacity of the acquisition hand off. */
+	public static final int DEFAULT_CAPACITY = 8;
+
+	private final List<Lab> labs;
+	private final boolean fanOut;
+	private final Runnable renderRequest;
+
+	private volatile HandOff<double[][]> acquisition;
+	private SpectrumBuffer[] render;
+	private SpectrumAverager[] averagers;
+	private volatile BaselineEstimator[] baselines;
+	private double[][] baselined;
+	private volatile boolean zScores;
+	private SignalProcessedListener[] listeners;
+	private AtomicBoolean renderPending = new AtomicBoolean(false);
+
+	private AtomicBoolean draining = new AtomicBoolean(false);
+	private volatile boolean running;
+	private volatile SessionRecorder recorder;
+	private volatile AsyncExporter exporter;
+	private volatile LatencyHistogram processLatency;
+	private AtomicReference<LabConfig> config = new AtomicReference<>();
+
+	private Runnable drainer = () -> drain();
+
+	/**
+	 * Instantiates a new dsp pipeline for a single lab. Each submitted block is
+	 * passed to the lab as is.
+	 *
+	 * @param lab
+	 *          the lab
+	 * @param policy
+	 *          the acquisition hand off policy
+	 * @param capacity
+	 *          the acquisition hand off capacity
+	 * @param renderRequest
+	 *          invoked when a processed spectrum becomes available and no
+	 *          earlier one is waiting to be rendered
+	 */
+	public DspPipeline(Lab lab, HandOffPolicy policy, int capacity, Runnable renderRequest) {
+		this(Collections.singletonList(lab), false, policy, capacity, renderRequest);
+	}
+
+	/**
+	 * Instantiates a new dsp pipeline for several labs of one connection. Each
+	 * submitted block is expected to hold one row per channel, channel 1 first,
+	 * and each lab is given the row for its channel.
+	 *
+	 * @param labs
+	 *          the labs
+	 * @param policy
+	 *          the acquisition hand off policy
+	 * @param capacity
+	 *          the acquisition hand off capacity
+	 * @param renderRequest
+	 *          invoked when processed spectra become available and no earlier
+	 *          ones are waiting to be rendered
+	 */
+	public DspPipeline(List<Lab> labs, HandOffPolicy policy, int capacity, Runnable renderRequest) {
+		this(labs, true, policy, capacity, renderRequest);
+	}
+
+	private DspPipeline(List<Lab> labs, boolean fanOut, HandOffPolicy policy, int capacity, Runnable renderRequest) {
+		this.labs = Collections.unmodifiableList(new ArrayList<>(labs));
+		this.fanOut = fanOut;
+		this.renderRequest = renderRequest;
+		setHandOffPolicy(policy, capacity);
+
+		render = new SpectrumBuffer[labs.size()];
+		averagers = new SpectrumAverager[labs.size()];
+		baselines = new BaselineEstimator[labs.size()];
+		baselined = new double[labs.size()][];
+		listeners = new SignalProcessedListener[labs.size()];
+		for (int i = 0; i < render.length; i++) {
+			int index = i;
+			Lab lab = labs.get(i);
+			SpectrumBuffer sb = new SpectrumBuffer(lab.getNumBands());
+			SpectrumAverager sa = new SpectrumAverager();
+			render[i] = sb;
+			averagers[i] = sa;
+			listeners[i] = t -> processed(index, lab, sa, sb, t);
+		}
+	}
+
+	/**
+	 * Submit a block of samples for processing. Never blocks.
+	 *
+	 * @param samples
+	 *          the samples
+	 * @return true, if the block was accepted
+	 */
+	public boolean submit(double[][] samples) {
+		if (!running) return false;
+
+		boolean accepted = acquisition.offer(samples);
+		if (draining.compareAndSet(false, true)) DspExecutor.execute(drainer);
+
+		return accepted;
+	}
+
+	/**
+	 * Starts accepting blocks, listening to the labs for processed spectra.
+	 */
+	public synchronized void start() {
+		if (!running) {
+			for (int i = 0; i < listeners.length; i++) {
+				labs.get(i).addSignalProcessedListener(listeners[i]);
+			}
+		}
+
+		acquisition.clear();
+		renderPending.set(false);
+		for (SpectrumAverager sa : averagers) {
+			sa.reset();
+		}
+		running = true;
+	}
+
+	/**
+	 * Stops accepting blocks, discarding any waiting, and stops listening to
+	 * the labs so that a discarded pipeline no longer receives their spectra. A
+	 * block being processed is allowed to complete.
+	 */
+	public synchronized void stop() {
+		if (running) {
+			for (int i = 0; i < listeners.length; i++) {
+				labs.get(i).removeSignalProcessedListener(listeners[i]);
+			}
+		}
+
+		running = false;
+		acquisition.clear();
+	}
+
+	/**
+	 * Returns the latest processed spectrum of the single lab waiting to be
+	 * rendered, if any.
+	 *
+	 * @return the spectrum, or null
+	 * @see #pollRender(int)
+	 */
+	public double[] pollRender() {
+		return pollRender(0);
+	}
+
+	/**
+	 * Returns the latest processed spectrum of the specified lab waiting to be
+	 * rendered, if any. Once called the next processed tick will trigger a new
+	 * render request. The array is reused and is only valid until the next call
+	 * for the lab.
+	 *
+	 * @param labIndex
+	 *          the index of the lab
+	 * @return the spectrum, or null
+	 */
+	public double[] pollRender(int labIndex) {
+		renderPending.set(false);
+		return render[labIndex].read();
+	}
+
+	/**
+	 * Gets the averager smoothing the spectra of the single lab for display.
+	 *
+	 * @return the averager
+	 * @see #getAverager(int)
+	 */
+	public SpectrumAverager getAverager() {
+		return getAverager(0);
+	}
+
+	/**
+	 * Gets the averager smoothing the spectra of the specified lab for display.
+	 *
+	 * @param labIndex
+	 *          the index of the lab
+	 * @return the averager
+	 */
+	public SpectrumAverager getAverager(int labIndex) {
+		return averagers[labIndex];
+	}
+
+	/**
+	 * Publishes the configuration of the labs, replacing any published but not
+	 * yet applied. It is applied to every lab on the DSP thread before the next
+	 * block is processed, never while a lab is processing; a config published
+	 * while stopped waits for the first block after the pipeline starts. Never
+	 * blocks.
+	 *
+	 * @param config
+	 *          the config
+	 */
+	public void setConfig(LabConfig config) {
+		if (config == null) throw new IllegalArgumentException("Config must be specified");
+
+		this.config.set(config);
+	}
+
+	/**
+	 * Sets the acquisition hand off policy. Any blocks waiting under the
+	 * previous policy are discarded.
+	 *
+	 * @param policy
+	 *          the policy
+	 * @param capacity
+	 *          the capacity
+	 */
+	public void setHandOffPolicy(HandOffPolicy policy, int capacity) {
+		acquisition = new HandOff<>(policy, capacity);
+	}
+
+	/**
+	 * Gets the acquisition hand off policy.
+	 *
+	 * @return the policy
+	 */
+	public HandOffPolicy getHandOffPolicy() {
+		return acquisition.getPolicy();
+	}
+
+	/**
+	 * Gets the number of sample blocks waiting for the DSP stage.
+	 *
+	 * @return the acquisition depth
+	 */
+	public int getAcquisitionDepth() {
+		return acquisition.getDepth();
+	}
+
+	/**
+	 * Gets the number of sample blocks dropped or replaced before processing.
+	 *
+	 * @return the acquisition dropped count
+	 */
+	public long getAcquisitionDropped() {
+		return acquisition.getDroppedCount();
+	}
+
+	/**
+	 * Gets the number of spectra waiting to be rendered.
+	 *
+	 * @return the render depth
+	 */
+	public int getRenderDepth() {
+		int depth = 0;
+		for (SpectrumBuffer sb : render) {
+			if (sb.isPending()) depth++;
+		}
+
+		return depth;
+	}
+
+	/**
+	 * Gets the number of spectra replaced before they could be rendered.
+	 *
+	 * @return the render dropped count
+	 */
+	public long getRenderDropped() {
+		long dropped = 0;
+		for (SpectrumBuffer sb : render) {
+			dropped += sb.getOverwrittenCount();
+		}
+
+		return dropped;
+	}
+
+	/**
+	 * Sets the recorder to which every processed spectrum is appended.
+	 *
+	 * @param recorder
+	 *          the new recorder, null to stop recording
+	 */
+	public void setRecorder(SessionRecorder recorder) {
+		this.recorder = recorder;
+	}
+
+	/**
+	 * Sets the exporter to which every spectrum is offered as displayed, ie.
+	 * after the {@link SpectrumAverager} has been applied.
+	 *
+	 * @param exporter
+	 *          the new exporter, null to stop exporting
+	 */
+	public void setExporter(AsyncExporter exporter) {
+		this.exporter = exporter;
+	}
+
+	/**
+	 * Sets the baseline estimator of the single lab.
+	 *
+	 * @param baseline
+	 *          the new baseline, null for none
+	 * @see #setBaseline(int, BaselineEstimator)
+	 */
+	public void setBaseline(BaselineEstimator baseline) {
+		setBaseline(0, baseline);
+	}
+
+	/**
+	 * Sets the baseline estimator of a lab, updated with each raw spectrum of
+	 * the lab on the DSP thread. Displayed spectra are the raw spectra less the
+	 * baseline mean or, if {@link #setZScores(boolean)}, their z-scores against
+	 * the baseline, before they are averaged.
+	 *
+	 * @param labIndex
+	 *          the index of the lab
+	 * @param baseline
+	 *          the new baseline, null for none
+	 */
+	public synchronized void setBaseline(int labIndex, BaselineEstimator baseline) {
+		// copied on write, read by the DSP thread without locking
+		BaselineEstimator[] copy = baselines.clone();
+		copy[labIndex] = baseline;
+		baselines = copy;
+	}
+
+	/**
+	 * Gets the baseline estimator of the single lab.
+	 *
+	 * @return the baseline, null if none
+	 */
+	public BaselineEstimator getBaseline() {
+		return baselines[0];
+	}
+
+	/**
+	 * Sets whether spectra are displayed as z-scores against their lab's
+	 * baseline, resetting the averagers so that powers and z-scores are not
+	 * averaged together.
+	 *
+	 * @param zScores
+	 *          true for z-scores
+	 */
+	public void setZScores(boolean zScores) {
+		this.zScores = zScores;
+		for (SpectrumAverager sa : averagers) {
+			sa.reset();
+		}
+	}
+
+	/**
+	 * Checks if spectra are displayed as z-scores.
+	 *
+	 * @return true, if z-scores
+	 */
+	public boolean isZScores() {
+		return zScores;
+	}
+
+	/**
+	 * Sets the histogram recording the time taken processing each block, all
+	 * labs included.
+	 *
+	 * @param processLatency
+	 *          the new histogram, null for none
+	 */
+	public void setProcessLatency(LatencyHistogram processLatency) {
+		this.processLatency = processLatency;
+	}
+
+	/**
+	 * Gets the lab, or the first lab if there are several.
+	 *
+	 * @return the lab
+	 */
+	public Lab getLab() {
+		return labs.get(0);
+	}
+
+	/**
+	 * Gets the labs.
+	 *
+	 * @return the labs
+	 */
+	public List<Lab> getLabs() {
+		return labs;
+	}
+
+	private void drain() {
+		while (true) {
+			double[][] samples = acquisition.poll();
+
+			if (samples == null) {
+				draining.set(false);
+
+				// a block may have arrived after the poll but before the flag cleared
+				if (acquisition.getDepth() == 0 || !draining.compareAndSet(false, true)) return;
+				continue;
+			}
+
+			if (running) process(samples);
+		}
+	}
+
+	private void process(double[][] samples) {
+		long start = System.nanoTime();
+		try {
+			applyConfig();
+
+			if (fanOut) {
+				DspExecutor.processAll(labs, fanOut(samples));
+			} else {
+				labs.get(0).process(samples);
+			}
+		} catch (Throwable e) {
+			log.error("Unexpected exception processing samples", e);
+		}
+
+		LatencyHistogram pl = processLatency;
+		if (pl != null) pl.recordSince(start);
+
+		if (getRenderDepth() > 0 && renderPending.compareAndSet(false, true)) renderRequest.run();
+	}
+
+	private void processed(int index, Lab lab, SpectrumAverager sa, SpectrumBuffer sb, double[] spectrum) {
+		double[] displayed = sa.apply(baseline(index, spectrum));
+		sb.write(displayed);
+
+		SessionRecorder sr = recorder;
+		if (sr != null) sr.recordSpectrum(lab.getChannel(), spectrum);
+
+		AsyncExporter ae = exporter;
+		if (ae != null) ae.exportSpectrum(lab.getChannel(), displayed);
+	}
+
+	// the estimator is updated with, and z-scores computed from, the same raw
+	// spectrum, before it is averaged
+	private double[] baseline(int index, double[] spectrum) {
+		BaselineEstimator be = baselines[index];
+		if (be == null) return spectrum;
+
+		be.update(spectrum);
+
+		double[] dest = baselined[index];
+		if (dest == null || dest.length != spectrum.length) baselined[index] = dest = new double[spectrum.length];
+
+		if (zScores) {
+			be.zScores(spectrum, dest);
+		} else {
+			be.subtract(spectrum, dest);
+		}
+
+		return dest;
+	}
+
+	private void applyConfig() {
+		LabConfig lc = config.getAndSet(null);
+		if (lc == null) return;
+
+		for (Lab lab : labs) {
+			lc.applyTo(lab);
+		}
+	}
+
+	private double[][][] fanOut(double[][] samples) {
+		double[][][] blocks = new double[labs.size()][][];
+		for (int i = 0; i < blocks.length; i++) {
+			int row = labs.get(i).getChannel() - 1;
+			if (row >= 0 && row < samples.length) blocks[i] = new double[][] { samples[row] };
+		}
+
+		return blocks;
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.dsp;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class HandOff is a bounded, non blocking (for the producer) transfer of
+ * work between two pipeline stages. Items which cannot be handed off according
+ * to the {@link HandOffPolicy} are counted as dropped rather than blocking the
+ * offering thread.
+ *
+ * @param <T>
+ *          the generic type
+ */
+public class HandOff<T> {
+
+	private final ArrayBlockingQueue<T> queue;
+	private final HandOffPolicy policy;
+
+	private AtomicLong dropped = new AtomicLong();
+
+	/**
+	 * Instantiates a new hand off.
+	 *
+	 * @param policy
+	 *          the policy
+	 * @param capacity
+	 *          the capacity, ignored for {@link HandOffPolicy#LATEST_WINS}
+	 */
+	public HandOff(HandOffPolicy policy, int capacity) {
+		if (policy == null) throw new IllegalArgumentException("Hand off policy must be specified");
+		if (capacity <= 0) throw new IllegalArgumentException("Capacity must be > 0: " + capacity);
+
+		this.policy = policy;
+		queue = new ArrayBlockingQueue<>(policy == HandOffPolicy.LATEST_WINS ? 1 : capacity);
+	}
+
+	/**
+	 * Offers the item to the next stage, never blocking.
+	 *
+	 * @param t
+	 *          the item
+	 * @return true, if the item was accepted
+	 */
+	public boolean offer(T t) {
+		if (queue.offer(t)) return true;
+
+		if (policy == HandOffPolicy.QUEUE_ALL) {
+			dropped.incrementAndGet();
+			return false;
+		}
+
+		while (!queue.offer(t)) {
+			if (queue.poll() != null) dropped.incrementAndGet();
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns the next item, waiting up to the specified time for one to become
+	 * available.
+	 *
+	 * @param timeout
+	 *          the timeout
+	 * @param unit
+	 *          the unit
+	 * @return the item, or null if none became available
+	 * @throws InterruptedException
+	 *           the interrupted exception
+	 */
+	public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+		return queue.poll(timeout, unit);
+	}
+
+	/**
+	 * Returns the next item if one is waiting.
+	 *
+	 * @return the item, or null
+	 */
+	public T poll() {
+		return queue.poll();
+	}
+
+	/**
+	 * Discards all waiting items.
+	 */
+	public void clear() {
+		queue.clear();
+	}
+
+	/**
+	 * Gets the number of items waiting.
+	 *
+	 * @return the depth
+	 */
+	public int getDepth() {
+		return queue.size();
+	}
+
+	/**
+	 * Gets the number of items dropped or replaced.
+	 *
+	 * @return the dropped count
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/**
+	 * Gets the policy.
+	 *
+	 * @return the policy
+	 */
+	public HandOffPolicy getPolicy() {
+		return policy;
+	}
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.dsp;
+
+import com.github.mrstampy.esp.dsp.lab.FFTType;
+import com.github.mrstampy.esp.dsp.lab.Lab;
+import com.github.mrstampy.esp.dsp.lab.PassFilter;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class LabConfig is an immutable snapshot of the processing settings of
+ * a {@link Lab}. Controls derive a new snapshot for each change and publish
+ * the latest to a {@link DspPipeline}, which applies it to its labs between
+ * blocks on the DSP thread, so that every spectrum is computed with one
+ * consistent configuration however the settings change while processing.
+ */
+public final class LabConfig {
+
+	private final FFTType fftType;
+	private final PassFilter passFilter;
+	private final double lowPassFrequency;
+	private final double highPassFrequency;
+	private final double lowPassFilterFactor;
+	private final double highPassFilterFactor;
+	private final boolean normalizeSignal;
+	private final boolean normalizeFft;
+	private final boolean absoluteValues;
+
+	/**
+	 * Snapshots the current settings of the lab.
+	 *
+	 * @param lab
+	 *          the lab
+	 * @return the lab config
+	 */
+	public static LabConfig of(Lab lab) {
+		return new LabConfig(lab.getFftType(), lab.getPassFilter(), lab.getLowPassFrequency(), lab.getHighPassFrequency(),
+				lab.getLowPassFilterFactor(), lab.getHighPassFilterFactor(), lab.isNormalizeSignal(), lab.isNormalizeFft(),
+				lab.isAbsoluteValues());
+	}
+
+	private LabConfig(FFTType fftType, PassFilter passFilter, double lowPassFrequency, double highPassFrequency,
+			double lowPassFilterFactor, double highPassFilterFactor, boolean normalizeSignal, boolean normalizeFft,
+			boolean absoluteValues) {
+		this.fftType = fftType;
+		this.passFilter = passFilter;
+		this.lowPassFrequency = lowPassFrequency;
+		this.highPassFrequency = highPassFrequency;
+		this.lowPassFilterFactor = lowPassFilterFactor;
+		this.highPassFilterFactor = highPassFilterFactor;
+		this.normalizeSignal = normalizeSignal;
+		this.normalizeFft = normalizeFft;
+		this.absoluteValues = absoluteValues;
+	}
+
+	/**
+	 * Sets the settings of the lab. DSP thread only while the lab is
+	 * processing.
+	 *
+	 * @param lab
+	 *          the lab
+	 */
+	public void applyTo(Lab lab) {
+		lab.setFftType(fftType);
+		lab.setPassFilter(passFilter);
+		lab.setLowPassFrequency(lowPassFrequency);
+		lab.setHighPassFrequency(highPassFrequency);
+		lab.setLowPassFilterFactor(lowPassFilterFactor);
+		lab.setHighPassFilterFactor(highPassFilterFactor);
+		lab.setNormalizeSignal(normalizeSignal);
+		lab.setNormalizeFft(normalizeFft);
+		lab.setAbsoluteValues(absoluteValues);
+	}
+
+	/**
+	 * With fft type.
+	 *
+	 * @param fftType
+	 *          the fft type
+	 * @return the lab config
+	 */
+	public LabConfig withFftType(FFTType fftType) {
+		return new LabConfig(fftType, passFilter, lowPassFrequency, highPassFrequency, lowPassFilterFactor,
+				highPassFilterFactor, normalizeSignal, normalizeFft, absoluteValues);
+	}
+
+	/**
+	 * With pass filter.
+	 *
+	 * @param passFilter
+	 *          the pass filter
+	 * @return the lab config
+	 */
+	public LabConfig withPassFilter(PassFilter passFilter) {
+		return new LabConfig(fftType, passFilter, lowPassFrequency, highPassFrequency, lowPassFilterFactor,
+				highPassFilterFactor, normalizeSignal, normalizeFft, absoluteValues);
+	}
+
+	/**
+	 * With low pass frequency.
+	 *
+	 * @param lowPassFrequency
+	 *          the low pass frequency
+	 * @return the lab config
+	 */
+	public LabConfig withLowPassFrequency(double lowPassFrequency) {
+		return new LabConfig(fftType, passFilter, lowPassFrequency, highPassFrequency, lowPassFilterFactor,
+				highPassFilterFactor, normalizeSignal, normalizeFft, absoluteValues);
+	}
+
+	/**
+	 * With high pass frequency.
+	 *
+	 * @param highPassFrequency
+	 *          the high pass frequency
+	 * @return the lab config
+	 */
+	public LabConfig withHighPassFrequency(double highPassFrequency) {
+		return new LabConfig(fftType, passFilter, lowPassFrequency, highPassFrequency, lowPassFilterFactor,
+				highPassFilterFactor, normalizeSignal, normalizeFft, absoluteValues);
+	}
+
+	/**
+	 * With low pass filter factor.
+	 *
+	 * @param lowPassFilterFactor
+	 *          the low pass filter factor
+	 * @return the lab config
+	 */
+	public LabConfig withLowPassFilterFactor(double lowPassFilterFactor) {
+		return new LabConfig(fftType, passFilter, lowPassFrequency, highPassFrequency, lowPassFilterFactor,
+				highPassFilterFactor, normalizeSignal, normalizeFft, absoluteValues);
+	}
+
+	/**
+	 * With high pass filter factor.
+	 *
+	 * @param highPassFilterFactor
+	 *          the high pass filter factor
+	 * @return the lab config
+	 */
+	public LabConfig withHighPassFilterFactor(double highPassFilterFactor) {
+		return new LabConfig(fftType, passFilter, lowPassFrequency, highPassFrequency, lowPassFilterFactor,
+				highPassFilterFactor, normalizeSignal, normalizeFft, absoluteValues);
+	}
+
+	/**
+	 * With normalize signal.
+	 *
+	 * @param normalizeSignal
+	 *          the normalize signal
+	 * @return the lab config
+	 */
+	public LabConfig withNormalizeSignal(boolean normalizeSignal) {
+		return new LabConfig(fftType, passFilter, lowPassFrequency, highPassFrequency, lowPassFilterFactor,
+				highPassFilterFactor, normalizeSignal, normalizeFft, absoluteValues);
+	}
+
+	/**
+	 * With normalize fft.
+	 *
+	 * @param normalizeFft
+	 *          the normalize fft
+	 * @return the lab config
+	 */
+	public LabConfig withNormalizeFft(boolean normalizeFft) {
+		return new LabConfig(fftType, passFilter, lowPassFrequency, highPassFrequency, lowPassFilterFactor,
+				highPassFilterFactor, normalizeSignal, normalizeFft, absoluteValues);
+	}
+
+	/**
+	 * With absolute values.
+	 *
+	 * @param absoluteValues
+	 *          the absolute values
+	 * @return the lab config
+	 */
+	public LabConfig withAbsoluteValues(boolean absoluteValues) {
+		return new LabConfig(fftType, passFilter, lowPassFrequency, highPassFrequency, lowPassFilterFactor,
+				highPassFilterFactor, normalizeSignal, normalizeFft, absoluteValues);
+	}
+
+	/**
+	 * Gets the fft type.
+	 *
+	 * @return the fft type
+	 */
+	public FFTType getFftType() {
+		return fftType;
+	}
+
+	/**
+	 * Gets the pass filter.
+	 *
+	 * @return the pass filter
+	 */
+	public PassFilter getPassFilter() {
+		return passFilter;
+	}
+
+	/**
+	 * Gets the low pass frequency.
+	 *
+	 * @return the low pass frequency
+	 */
+	public double getLowPassFrequency() {
+		return lowPassFrequency;
+	}
+
+	/**
+	 * Gets the high pass frequency.
+	 *
+	 * @return the high pass frequency
+	 */
+	public double getHighPassFrequency() {
+		return highPassFrequency;
+	}
+
+	/**
+	 * Gets the low pass filter factor.
+	 *
+	 * @return the low pass filter factor
+	 */
+	public double getLowPassFilterFactor() {
+		return lowPassFilterFactor;
+	}
+
+	/**
+	 * Gets the high pass filter factor.
+	 *
+	 * @return the high pass filter factor
+	 */
+	public double getHighPassFilterFactor() {
+		return highPassFilterFactor;
+	}
+
+	/**
+	 * Checks if is normalize signal.
+	 *
+	 * @return true, if is normalize signal
+	 */
+	public boolean isNormalizeSignal() {
+		return normalizeSignal;
+	}
+
+	/**
+	 * Checks if is normalize fft.
+	 *
+	 * @return true, if is normalize fft
+	 */
+	public boolean isNormalizeFft() {
+		return normalizeFft;
+	}
+
+	/**
+	 * Checks if is absolute values.
+	 *
+	 * @return true, if is absolute values
+	 */
+	public boolean isAbsoluteValues() {
+		return absoluteValues;
+	}
+}
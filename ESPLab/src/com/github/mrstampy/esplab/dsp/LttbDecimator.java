@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.dsp;
+
+import java.util.function.DoubleConsumer;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class LttbDecimator is a streaming implementation of the Largest
+ * Triangle Three Buckets algorithm (Steinarsson, 2013). One point is emitted
+ * per bucket: the sample forming the largest triangle with the previously
+ * emitted point and the average of the following bucket. Emission of a bucket
+ * is therefore delayed until the next bucket has filled.
+ */
+public class LttbDecimator implements Decimator {
+
+	private volatile int factor;
+
+	private double[] current;
+	private double[] next;
+	private int nextCount;
+	private boolean haveCurrent;
+
+	private long bucketStart;
+	private double prevX;
+	private double prevY;
+	private boolean havePrev;
+
+	/**
+	 * Instantiates a new lttb decimator.
+	 *
+	 * @param factor
+	 *          the number of samples per bucket
+	 */
+	public LttbDecimator(int factor) {
+		setFactor(factor);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esplab.dsp.Decimator#decimate(double[],
+	 * java.util.function.DoubleConsumer)
+	 */
+	@Override
+	public void decimate(double[] samples, DoubleConsumer out) {
+		if (current == null || current.length != factor) init();
+
+		for (int i = 0; i < samples.length; i++) {
+			next[nextCount++] = samples[i];
+
+			if (nextCount == next.length) bucketFilled(out);
+		}
+	}
+
+	private void bucketFilled(DoubleConsumer out) {
+		if (haveCurrent) {
+			emit(out);
+			bucketStart += current.length;
+		}
+
+		double[] tmp = current;
+		current = next;
+		next = tmp;
+		nextCount = 0;
+		haveCurrent = true;
+	}
+
+	private void emit(DoubleConsumer out) {
+		int len = current.length;
+
+		if (!havePrev) {
+			// the first bucket anchors the line with its first sample
+			setPrev(0, out);
+			return;
+		}
+
+		double avgX = bucketStart + len + (len - 1) / 2.0;
+		double avgY = 0;
+		for (int i = 0; i < len; i++) {
+			avgY += next[i];
+		}
+		avgY /= len;
+
+		int selected = 0;
+		double maxArea = -1;
+		for (int i = 0; i < len; i++) {
+			double x = bucketStart + i;
+			double area = Math.abs((prevX - avgX) * (current[i] - prevY) - (prevX - x) * (avgY - prevY));
+			if (area > maxArea) {
+				maxArea = area;
+				selected = i;
+			}
+		}
+
+		setPrev(selected, out);
+	}
+
+	private void setPrev(int idx, DoubleConsumer out) {
+		prevX = bucketStart + idx;
+		prevY = current[idx];
+		havePrev = true;
+
+		out.accept(prevY);
+	}
+
+	private void init() {
+		int f = factor;
+		current = new double[f];
+		next = new double[f];
+		reset();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esplab.dsp.Decimator#setFactor(int)
+	 */
+	@Override
+	public void setFactor(int factor) {
+		if (factor <= 0) throw new IllegalArgumentException("Factor must be > 0: " + factor);
+		this.factor = factor;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esplab.dsp.Decimator#getFactor()
+	 */
+	@Override
+	public int getFactor() {
+		return factor;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esplab.dsp.Decimator#reset()
+	 */
+	@Override
+	public void reset() {
+		nextCount = 0;
+		haveCurrent = false;
+		havePrev = false;
+		bucketStart = 0;
+	}
+}
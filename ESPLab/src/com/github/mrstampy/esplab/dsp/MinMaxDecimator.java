@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.dsp;
+
+import java.util.function.DoubleConsumer;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class MinMaxDecimator emits the minimum and maximum of each bucket of
+ * samples, in the order in which they occurred. The envelope of the signal is
+ * preserved exactly, so a single sample spike survives any factor. Output is
+ * two points per bucket (one if the bucket is a single sample), making a
+ * factor of 1 or 2 a pass through.
+ */
+public class MinMaxDecimator implements Decimator {
+
+	private volatile int factor;
+
+	private int count;
+	private double min;
+	private double max;
+	private boolean minFirst;
+
+	/**
+	 * Instantiates a new min max decimator.
+	 *
+	 * @param factor
+	 *          the number of samples per bucket
+	 */
+	public MinMaxDecimator(int factor) {
+		setFactor(factor);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esplab.dsp.Decimator#decimate(double[],
+	 * java.util.function.DoubleConsumer)
+	 */
+	@Override
+	public void decimate(double[] samples, DoubleConsumer out) {
+		int f = factor;
+		for (int i = 0; i < samples.length; i++) {
+			double val = samples[i];
+
+			if (count == 0) {
+				min = val;
+				max = val;
+				minFirst = true;
+			} else if (val < min) {
+				min = val;
+				minFirst = false;
+			} else if (val > max) {
+				max = val;
+				minFirst = true;
+			}
+
+			if (++count >= f) flush(out);
+		}
+	}
+
+	private void flush(DoubleConsumer out) {
+		if (count == 1) {
+			out.accept(min);
+		} else {
+			out.accept(minFirst ? min : max);
+			out.accept(minFirst ? max : min);
+		}
+
+		count = 0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esplab.dsp.Decimator#setFactor(int)
+	 */
+	@Override
+	public void setFactor(int factor) {
+		if (factor <= 0) throw new IllegalArgumentException("Factor must be > 0: " + factor);
+		this.factor = factor;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esplab.dsp.Decimator#getFactor()
+	 */
+	@Override
+	public int getFactor() {
+		return factor;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esplab.dsp.Decimator#reset()
+	 */
+	@Override
+	public void reset() {
+		count = 0;
+	}
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.dsp;
+
+import java.util.Arrays;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class SpectrumAverager smooths successive spectra for display according
+ * to its {@link SpectrumDisplayMode}. Each mode costs O(bands) per spectrum
+ * regardless of the window: the sliding average keeps a running sum per band
+ * over a primitive ring of the last N spectra, adding the newest and
+ * subtracting the one it replaces, and the exponential and peak hold modes
+ * keep a single spectrum of state.<br>
+ * <br>
+ * {@link #apply(double[])} is called by the single DSP thread. The setters
+ * may be called from any thread and take effect, clearing the history, on
+ * the next spectrum.
+ */
+public class SpectrumAverager {
+
+	/** The default number of spectra in the sliding average. */
+	public static final int DEFAULT_WINDOW = 8;
+
+	/** The default smoothing factor of the exponential average. */
+	public static final double DEFAULT_ALPHA = 0.2;
+
+	/** The default fraction of the held peak retained per spectrum. */
+	public static final double DEFAULT_DECAY = 0.95;
+
+	// running sums are recalculated from the ring once per this many wraps so
+	// that floating point error cannot accumulate
+	private static final int RESUM_WRAPS = 64;
+
+	private volatile SpectrumDisplayMode mode = SpectrumDisplayMode.LATEST;
+	private volatile int window = DEFAULT_WINDOW;
+	private volatile double alpha = DEFAULT_ALPHA;
+	private volatile double decay = DEFAULT_DECAY;
+	private volatile boolean dirty = true;
+
+	private SpectrumDisplayMode current;
+	private int size;
+	private int length;
+
+	private double[] ring = new double[0];
+	private double[] sums = new double[0];
+	private double[] out = new double[0];
+	private int pos;
+	private int count;
+	private int wraps;
+
+	/**
+	 * Smooths the spectrum. The returned array is the spectrum itself in
+	 * {@link SpectrumDisplayMode#LATEST} mode, otherwise an array reused on
+	 * each call. DSP thread only.
+	 *
+	 * @param spectrum
+	 *          the spectrum
+	 * @return the smoothed spectrum
+	 */
+	public double[] apply(double[] spectrum) {
+		if (dirty || spectrum.length != length) init(spectrum.length);
+
+		switch (current) {
+		case SLIDING_AVERAGE:
+			slide(spectrum);
+			break;
+		case EXPONENTIAL:
+			exponential(spectrum);
+			break;
+		case PEAK_HOLD:
+			peakHold(spectrum);
+			break;
+		default:
+			return spectrum;
+		}
+
+		return out;
+	}
+
+	private void init(int length) {
+		dirty = false;
+		current = mode;
+		size = current == SpectrumDisplayMode.SLIDING_AVERAGE ? window : 0;
+		this.length = length;
+
+		if (ring.length != size * length) ring = new double[size * length];
+		if (sums.length != length) {
+			sums = new double[length];
+			out = new double[length];
+		}
+
+		Arrays.fill(sums, 0);
+		pos = 0;
+		count = 0;
+		wraps = 0;
+	}
+
+	private void slide(double[] spectrum) {
+		int offset = pos * length;
+		boolean full = count == size;
+
+		for (int i = 0; i < length; i++) {
+			double val = spectrum[i];
+			if (full) sums[i] -= ring[offset + i];
+			ring[offset + i] = val;
+			sums[i] += val;
+		}
+
+		if (!full) count++;
+		if (++pos == size) {
+			pos = 0;
+			if (++wraps == RESUM_WRAPS) resum();
+		}
+
+		for (int i = 0; i < length; i++) {
+			out[i] = sums[i] / count;
+		}
+	}
+
+	private void resum() {
+		wraps = 0;
+		Arrays.fill(sums, 0);
+		for (int s = 0; s < count; s++) {
+			int offset = s * length;
+			for (int i = 0; i < length; i++) {
+				sums[i] += ring[offset + i];
+			}
+		}
+	}
+
+	private void exponential(double[] spectrum) {
+		if (count++ == 0) {
+			System.arraycopy(spectrum, 0, out, 0, length);
+			return;
+		}
+
+		double a = alpha;
+		for (int i = 0; i < length; i++) {
+			out[i] += a * (spectrum[i] - out[i]);
+		}
+	}
+
+	private void peakHold(double[] spectrum) {
+		if (count++ == 0) {
+			System.arraycopy(spectrum, 0, out, 0, length);
+			return;
+		}
+
+		double d = decay;
+		for (int i = 0; i < length; i++) {
+			double val = spectrum[i];
+			double held = val + (out[i] - val) * d;
+			out[i] = held > val ? held : val;
+		}
+	}
+
+	/**
+	 * Sets the mode, window, alpha and decay to those of another averager, eg.
+	 * that of a pipeline being replaced. The history is cleared.
+	 *
+	 * @param other
+	 *          the averager to copy
+	 */
+	public void configure(SpectrumAverager other) {
+		alpha = other.getAlpha();
+		decay = other.getDecay();
+		window = other.getWindow();
+		mode = other.getMode();
+		reset();
+	}
+
+	/**
+	 * Clears the history; the next spectrum starts afresh.
+	 */
+	public void reset() {
+		dirty = true;
+	}
+
+	/**
+	 * Gets the mode.
+	 *
+	 * @return the mode
+	 */
+	public SpectrumDisplayMode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Sets the mode.
+	 *
+	 * @param mode
+	 *          the new mode
+	 */
+	public void setMode(SpectrumDisplayMode mode) {
+		if (mode == null) throw new IllegalArgumentException("Mode must be specified");
+
+		this.mode = mode;
+		reset();
+	}
+
+	/**
+	 * Gets the number of spectra in the sliding average.
+	 *
+	 * @return the window
+	 */
+	public int getWindow() {
+		return window;
+	}
+
+	/**
+	 * Sets the number of spectra in the sliding average.
+	 *
+	 * @param window
+	 *          the new window
+	 */
+	public void setWindow(int window) {
+		if (window <= 0) throw new IllegalArgumentException("Window must be > 0: " + window);
+
+		this.window = window;
+		reset();
+	}
+
+	/**
+	 * Gets the alpha.
+	 *
+	 * @return the alpha
+	 */
+	public double getAlpha() {
+		return alpha;
+	}
+
+	/**
+	 * Sets the smoothing factor of the exponential average; larger values
+	 * follow the signal more closely.
+	 *
+	 * @param alpha
+	 *          the new alpha, 0 - 1 exclusive of 0
+	 */
+	public void setAlpha(double alpha) {
+		if (alpha <= 0 || alpha > 1) throw new IllegalArgumentException("Alpha must be > 0 and <= 1: " + alpha);
+
+		this.alpha = alpha;
+	}
+
+	/**
+	 * Gets the decay.
+	 *
+	 * @return the decay
+	 */
+	public double getDecay() {
+		return decay;
+	}
+
+	/**
+	 * Sets the fraction of the distance between a held peak and the current
+	 * value retained per spectrum; 0 for no hold, 1 to hold indefinitely.
+	 *
+	 * @param decay
+	 *          the new decay, 0 - 1
+	 */
+	public void setDecay(double decay) {
+		if (decay < 0 || decay > 1) throw new IllegalArgumentException("Decay must be >= 0 and <= 1: " + decay);
+
+		this.decay = decay;
+	}
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.dsp;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.mrstampy.esp.dsp.lab.EspWindowFunction;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class WindowTables provides the coefficients of the
+ * {@link EspWindowFunction}s, computed once per function and size and kept in
+ * a bounded {@link CoefficientCache}, so that windowing a frame is a single
+ * multiply per sample and changing the function or size back and forth does
+ * not recompute the tables.<br>
+ * <br>
+ * The functions are enumerated by the library without their coefficients, so
+ * tables are computed from the standard definition of the window each
+ * function names. A function without a definition here has no table; it is
+ * logged once and left to the labs to apply.
+ */
+public class WindowTables {
+	private static final Logger log = LoggerFactory.getLogger(WindowTables.class);
+
+	private static final Set<String> SUPPORTED = new HashSet<>(Arrays.asList("HAMMING", "HANN", "HANNING", "BLACKMAN",
+			"BARTLETT", "TRIANGULAR", "BARTLETT_HANN", "COSINE", "LANCZOS", "GAUSS", "RECTANGULAR"));
+
+	/** The maximum number of tables cached. */
+	public static final int MAX_TABLES = 32;
+
+	private static final CoefficientCache<Key> tables = new CoefficientCache<>(MAX_TABLES);
+	private static final Set<EspWindowFunction> unsupported = Collections.synchronizedSet(EnumSet
+			.noneOf(EspWindowFunction.class));
+
+	private WindowTables() {
+	}
+
+	/**
+	 * Gets the coefficients of the window function for frames of the size. The
+	 * array is shared and must not be modified.
+	 *
+	 * @param function
+	 *          the function
+	 * @param size
+	 *          the frame size
+	 * @return the coefficients, or null if the function is not
+	 *         {@link #isSupported(EspWindowFunction)}
+	 */
+	public static double[] getTable(EspWindowFunction function, int size) {
+		if (function == null) throw new IllegalArgumentException("Window function must be specified");
+		if (size <= 0) throw new IllegalArgumentException("Size must be > 0: " + size);
+
+		if (!isSupported(function)) {
+			if (unsupported.add(function)) log.warn("No table for window function {}, left to the labs", function);
+			return null;
+		}
+
+		return tables.get(new Key(function, size), k -> compute(k.getFunction().name(), k.getSize()));
+	}
+
+	/**
+	 * Checks if the function has a table.
+	 *
+	 * @param function
+	 *          the function
+	 * @return true, if supported
+	 */
+	public static boolean isSupported(EspWindowFunction function) {
+		return function != null && SUPPORTED.contains(function.name());
+	}
+
+	/**
+	 * Multiplies each row of the frame by the window function's coefficients,
+	 * leaving it unchanged should the function not be supported.
+	 *
+	 * @param function
+	 *          the function
+	 * @param frame
+	 *          the frame, one row per channel
+	 */
+	public static void apply(EspWindowFunction function, double[][] frame) {
+		double[] table = null;
+		for (double[] row : frame) {
+			if (row.length == 0) continue;
+
+			// rows are usually the same length, looked up once per frame
+			if (table == null || table.length != row.length) table = getTable(function, row.length);
+			if (table == null) return;
+
+			for (int i = 0; i < row.length; i++) {
+				row[i] *= table[i];
+			}
+		}
+	}
+
+	/**
+	 * Gets the cache of tables, for its hit and miss counts.
+	 *
+	 * @return the cache
+	 */
+	public static CoefficientCache<Key> getCache() {
+		return tables;
+	}
+
+	/**
+	 * Discards all tables.
+	 */
+	public static void clear() {
+		tables.clear();
+	}
+
+	private static double[] compute(String name, int size) {
+		double[] table = new double[size];
+		if (size == 1) {
+			table[0] = 1;
+			return table;
+		}
+
+		double m = size - 1;
+		for (int i = 0; i < size; i++) {
+			double x = i / m;
+			switch (name) {
+			case "HAMMING":
+				table[i] = 0.54 - 0.46 * Math.cos(2 * Math.PI * x);
+				break;
+			case "HANN":
+			case "HANNING":
+				table[i] = 0.5 - 0.5 * Math.cos(2 * Math.PI * x);
+				break;
+			case "BLACKMAN":
+				table[i] = 0.42 - 0.5 * Math.cos(2 * Math.PI * x) + 0.08 * Math.cos(4 * Math.PI * x);
+				break;
+			case "BARTLETT":
+			case "TRIANGULAR":
+				table[i] = 1 - Math.abs(2 * x - 1);
+				break;
+			case "BARTLETT_HANN":
+				table[i] = 0.62 - 0.48 * Math.abs(x - 0.5) - 0.38 * Math.cos(2 * Math.PI * x);
+				break;
+			case "COSINE":
+				table[i] = Math.sin(Math.PI * x);
+				break;
+			case "LANCZOS":
+				double t = 2 * x - 1;
+				table[i] = t == 0 ? 1 : Math.sin(Math.PI * t) / (Math.PI * t);
+				break;
+			case "GAUSS":
+				double g = (i - m / 2) / (0.25 * m / 2);
+				table[i] = Math.exp(-0.5 * g * g);
+				break;
+			case "RECTANGULAR":
+				table[i] = 1;
+				break;
+			default:
+				return null;
+			}
+		}
+
+		return table;
+	}
+
+	/**
+	 * The key of a cached table, the window function and frame size.
+	 */
+	public static final class Key {
+		private final EspWindowFunction function;
+		private final int size;
+
+		/**
+		 * Instantiates a new key.
+		 *
+		 * @param function
+		 *          the function
+		 * @param size
+		 *          the frame size
+		 */
+		public Key(EspWindowFunction function, int size) {
+			this.function = function;
+			this.size = size;
+		}
+
+		/**
+		 * Gets the function.
+		 *
+		 * @return the function
+		 */
+		public EspWindowFunction getFunction() {
+			return function;
+		}
+
+		/**
+		 * Gets the frame size.
+		 *
+		 * @return the size
+		 */
+		public int getSize() {
+			return size;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode() {
+			return 31 * function.hashCode() + size;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) return true;
+			if (!(obj instanceof Key)) return false;
+
+			Key other = (Key) obj;
+			return function == other.function && size == other.size;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return function + ":" + size;
+		}
+	}
+}
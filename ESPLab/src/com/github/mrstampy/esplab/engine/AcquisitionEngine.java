@@ -0,0 +1,609 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.engine;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.mrstampy.esp.dsp.lab.RawEspConnection;
+import com.github.mrstampy.esp.multiconnectionsocket.ConnectionEvent;
+import com.github.mrstampy.esp.multiconnectionsocket.ConnectionEvent.State;
+import com.github.mrstampy.esp.multiconnectionsocket.ConnectionEventListener;
+import com.github.mrstampy.esplab.acquisition.AcquisitionHub;
+import com.github.mrstampy.esplab.acquisition.SampleBlock;
+import com.github.mrstampy.esplab.io.AsyncExporter;
+import com.github.mrstampy.esplab.io.SessionRecorder;
+import com.github.mrstampy.esplab.metrics.EngineMetrics;
+import com.github.mrstampy.esplab.metrics.Stage;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class AcquisitionEngine polls a connection for as long as it is
+ * started, with no dependency on JavaFX. It follows the connection's events,
+ * polls the channel(s) through the connection's {@link AcquisitionHub} at a
+ * fixed or adaptive period, optionally records the samples and passes them to
+ * {@link #process(double[][])} and then to its {@link EngineListener}s.<br>
+ * <br>
+ * When {@link #setStreaming(boolean)} the engine instead streams the
+ * connection through its hub: every sample is delivered exactly once, in
+ * blocks of only the samples which are new, and gaps in the stream are
+ * counted. Recording is then lossless; the blocks of all channels are
+ * recorded as they arrive.<br>
+ * <br>
+ * The graphs are views over an engine; an engine may equally be run on its
+ * own, ie. on a server with no display:
+ * 
+ * <pre>
+ * AcquisitionEngine engine = new LabEngine(lab);
+ * engine.setConnection(connection);
+ * connection.start();
+ * </pre>
+ */
+public class AcquisitionEngine implements ConnectionEventListener {
+	private static final Logger log = LoggerFactory.getLogger(AcquisitionEngine.class);
+
+	/** The default period between polls of the connection, in millis. */
+	public static final long DEFAULT_POLL_PERIOD = 250;
+
+	/** The default fastest adaptive poll period, in millis. */
+	public static final long DEFAULT_MIN_POLL_PERIOD = 50;
+
+	/** The default slowest adaptive poll period, in millis. */
+	public static final long DEFAULT_MAX_POLL_PERIOD = 2000;
+
+	private static final int KEEPING_UP_TICKS = 8;
+
+	private volatile RawEspConnection connection;
+	private final IntSupplier pollChannel;
+
+	private AtomicBoolean running = new AtomicBoolean(false);
+
+	private AcquisitionHub.Subscriber acquisition;
+	private AcquisitionHub.StreamSubscriber stream;
+	private volatile boolean streaming;
+	private long nextSequence;
+	private AtomicLong streamGaps = new AtomicLong();
+	private AtomicLong missedSamples = new AtomicLong();
+	private volatile SessionRecorder recorder;
+	private volatile AsyncExporter exporter;
+
+	private volatile long pollPeriod = DEFAULT_POLL_PERIOD;
+	private volatile long minPollPeriod = DEFAULT_MIN_POLL_PERIOD;
+	private volatile long maxPollPeriod = DEFAULT_MAX_POLL_PERIOD;
+	private volatile long effectivePollPeriod = DEFAULT_POLL_PERIOD;
+	private volatile boolean adaptive;
+	private volatile int keepingUp;
+
+	private List<EngineListener> listeners = new CopyOnWriteArrayList<>();
+
+	private final EngineMetrics metrics = new EngineMetrics();
+
+	/**
+	 * Instantiates a new acquisition engine polling channel 1.
+	 */
+	public AcquisitionEngine() {
+		this(1);
+	}
+
+	/**
+	 * Instantiates a new acquisition engine.
+	 *
+	 * @param channel
+	 *          the channel to poll, or {@link AcquisitionHub#ALL_CHANNELS}
+	 */
+	public AcquisitionEngine(int channel) {
+		this(() -> channel);
+	}
+
+	/**
+	 * Instantiates a new acquisition engine which polls the channel returned by
+	 * the supplier when polling starts.
+	 *
+	 * @param pollChannel
+	 *          the poll channel supplier
+	 */
+	public AcquisitionEngine(IntSupplier pollChannel) {
+		this.pollChannel = pollChannel;
+		metrics.addSamplesDroppedSource(() -> missedSamples.get());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esp.multiconnectionsocket.ConnectionEventListener#
+	 * connectionEventPerformed
+	 * (com.github.mrstampy.esp.multiconnectionsocket.ConnectionEvent)
+	 */
+	@Override
+	public void connectionEventPerformed(ConnectionEvent e) {
+		switch (e.getState()) {
+		case STARTED:
+			started();
+			break;
+		case STOPPED:
+			stopped();
+			break;
+		case ERROR_STOPPED:
+		case ERROR_UNBOUND:
+			stopped();
+			listeners.forEach(l -> l.connectionError(e.getState()));
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * Passes a block of samples through the engine as if polled: records them if
+	 * recording, exports those not in the previous block if exporting,
+	 * {@link #process(double[][])}es them and delivers them to the listeners.
+	 *
+	 * @param samples
+	 *          the samples
+	 */
+	public void accept(double[][] samples) {
+		SessionRecorder sr = recorder;
+		if (sr != null) sr.recordSamples(getPollChannel(), samples);
+
+		AsyncExporter ae = exporter;
+		if (ae != null) ae.exportSnapshot(getPollChannel(), samples);
+
+		deliver(samples);
+	}
+
+	/**
+	 * Passes a block of a continuous stream through the engine as if streamed:
+	 * counts any gap, records and exports the block if recording or exporting and
+	 * {@link #process(double[][])}es and delivers the samples of the polled
+	 * channel(s).
+	 *
+	 * @param block
+	 *          the block
+	 */
+	public void accept(SampleBlock block) {
+		if (block.isGap() || (nextSequence != 0 && block.getSequence() != nextSequence)) gap(block);
+		nextSequence = block.getSequence() + block.getLength();
+
+		SessionRecorder sr = recorder;
+		if (sr != null) sr.recordSamples(AcquisitionHub.ALL_CHANNELS, block.getSamples());
+
+		AsyncExporter ae = exporter;
+		if (ae != null) ae.exportSamples(AcquisitionHub.ALL_CHANNELS, block.getSamples());
+
+		int channel = getPollChannel();
+		deliver(channel == AcquisitionHub.ALL_CHANNELS ? block.getSamples() : new double[][] { block.getChannel(channel) });
+	}
+
+	private void gap(SampleBlock block) {
+		streamGaps.incrementAndGet();
+
+		long missed = block.getMissed();
+		if (missed == SampleBlock.UNKNOWN) {
+			log.debug("{} stream gap of unknown length at {}", getClass().getSimpleName(), block.getSequence());
+		} else {
+			if (missed == 0) missed = Math.max(0, block.getSequence() - nextSequence);
+			missedSamples.addAndGet(missed);
+			log.debug("{} stream gap of {} samples at {}", getClass().getSimpleName(), missed, block.getSequence());
+		}
+	}
+
+	private void deliver(double[][] samples) {
+		long start = System.nanoTime();
+		metrics.received(samples);
+
+		process(samples);
+
+		for (EngineListener l : listeners) {
+			l.samplesAcquired(samples);
+		}
+
+		metrics.recordSince(Stage.DELIVER, start);
+	}
+
+	/**
+	 * Processes the polled samples before they are delivered to the listeners.
+	 * Does nothing by default.
+	 *
+	 * @param samples
+	 *          the samples
+	 */
+	protected void process(double[][] samples) {
+	}
+
+	/**
+	 * Invoked when the connection starts, before polling begins.
+	 */
+	protected void startImpl() {
+	}
+
+	/**
+	 * Invoked when the connection stops, after polling has ended.
+	 */
+	protected void stopImpl() {
+	}
+
+	/**
+	 * Gets the metrics of the engine and its views.
+	 *
+	 * @return the metrics
+	 */
+	public EngineMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Checks if the engine is running.
+	 *
+	 * @return true, if running
+	 */
+	public boolean isRunning() {
+		return running.get();
+	}
+
+	/**
+	 * Adds the engine listener.
+	 *
+	 * @param l
+	 *          the l
+	 */
+	public void addEngineListener(EngineListener l) {
+		if (l != null && !listeners.contains(l)) listeners.add(l);
+	}
+
+	/**
+	 * Removes the engine listener.
+	 *
+	 * @param l
+	 *          the l
+	 */
+	public void removeEngineListener(EngineListener l) {
+		listeners.remove(l);
+	}
+
+	/**
+	 * Gets the connection.
+	 *
+	 * @return the connection
+	 */
+	public RawEspConnection getConnection() {
+		return connection;
+	}
+
+	/**
+	 * Sets the connection, following its events from now on. Polling of any
+	 * previous connection ends; if the new connection is already connected
+	 * polling starts immediately.
+	 *
+	 * @param connection
+	 *          the new connection
+	 */
+	public void setConnection(RawEspConnection connection) {
+		RawEspConnection old = this.connection;
+		if (old != null) {
+			old.removeConnectionEventListener(this);
+			unschedulePoll();
+		}
+
+		this.connection = connection;
+
+		if (connection == null) return;
+
+		connection.addConnectionEventListener(this);
+		if (connection.isConnected()) {
+			started();
+		} else if (running.get()) {
+			stopped();
+		}
+	}
+
+	/**
+	 * Gets the channel polled, {@link AcquisitionHub#ALL_CHANNELS} for the
+	 * samples of all channels.
+	 *
+	 * @return the poll channel
+	 */
+	public int getPollChannel() {
+		return pollChannel.getAsInt();
+	}
+
+	/**
+	 * Returns true if the stages downstream of the poll are not keeping up with
+	 * the samples being delivered, by default if any listener is behind. Used
+	 * to slow the poll when adaptive.
+	 *
+	 * @return true, if behind
+	 * @see #setAdaptive(boolean)
+	 */
+	protected boolean isBehind() {
+		for (EngineListener l : listeners) {
+			if (l.isBehind()) return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns true if there are listeners and none can currently be seen.
+	 *
+	 * @return true, if hidden
+	 */
+	protected boolean isHidden() {
+		if (listeners.isEmpty()) return false;
+
+		for (EngineListener l : listeners) {
+			if (!l.isHidden()) return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Gets the configured poll period.
+	 *
+	 * @return the poll period in millis
+	 */
+	public long getPollPeriod() {
+		return pollPeriod;
+	}
+
+	/**
+	 * Sets the period between polls of the connection. Takes effect
+	 * immediately if running. When adaptive this is the starting period.
+	 *
+	 * @param millis
+	 *          the new poll period
+	 */
+	public void setPollPeriod(long millis) {
+		if (millis <= 0) throw new IllegalArgumentException("Poll period must be > 0: " + millis);
+
+		pollPeriod = millis;
+		if (running.get()) schedulePoll(millis);
+	}
+
+	/**
+	 * Sets the range within which an adaptive poll period may vary.
+	 *
+	 * @param minMillis
+	 *          the fastest period
+	 * @param maxMillis
+	 *          the slowest period
+	 */
+	public void setPollPeriodRange(long minMillis, long maxMillis) {
+		if (minMillis <= 0 || maxMillis < minMillis) {
+			throw new IllegalArgumentException("Invalid poll period range: " + minMillis + " - " + maxMillis);
+		}
+
+		minPollPeriod = minMillis;
+		maxPollPeriod = maxMillis;
+	}
+
+	/**
+	 * Checks if the poll period is adaptive.
+	 *
+	 * @return true, if adaptive
+	 */
+	public boolean isAdaptive() {
+		return adaptive;
+	}
+
+	/**
+	 * If true the poll period speeds up towards the minimum of the poll period
+	 * range while processing keeps up, backs off when {@link #isBehind()} and
+	 * drops to the maximum while {@link #isHidden()}. If false the configured
+	 * poll period is used.
+	 *
+	 * @param adaptive
+	 *          the new adaptive
+	 */
+	public void setAdaptive(boolean adaptive) {
+		this.adaptive = adaptive;
+		if (!adaptive && running.get() && effectivePollPeriod != pollPeriod) schedulePoll(pollPeriod);
+	}
+
+	/**
+	 * Gets the poll period currently in effect, which differs from the
+	 * configured period when adaptive.
+	 *
+	 * @return the effective poll period in millis
+	 */
+	public long getEffectivePollPeriod() {
+		return effectivePollPeriod;
+	}
+
+	/**
+	 * Checks if streaming.
+	 *
+	 * @return true, if streaming
+	 */
+	public boolean isStreaming() {
+		return streaming;
+	}
+
+	/**
+	 * If true every sample of the connection is delivered exactly once as it is
+	 * streamed by the connection's hub, rather than the latest samples on each
+	 * poll. The poll period, fixed or adaptive, then does not apply to the
+	 * delivery of samples. Takes effect immediately if running.
+	 *
+	 * @param streaming
+	 *          the new streaming
+	 * @see AcquisitionHub#stream(com.github.mrstampy.esplab.acquisition.SampleStreamListener)
+	 */
+	public void setStreaming(boolean streaming) {
+		if (this.streaming == streaming) return;
+
+		this.streaming = streaming;
+		if (!running.get()) return;
+
+		unschedulePoll();
+		nextSequence = 0;
+		schedulePoll(pollPeriod);
+	}
+
+	/**
+	 * Gets the number of gaps in the stream since the engine started.
+	 *
+	 * @return the stream gaps
+	 */
+	public long getStreamGaps() {
+		return streamGaps.get();
+	}
+
+	/**
+	 * Gets the number of samples known to have been lost in the gaps of the
+	 * stream since the engine started. Gaps of unknown length are not
+	 * included.
+	 *
+	 * @return the missed samples
+	 */
+	public long getMissedSamples() {
+		return missedSamples.get();
+	}
+
+	/**
+	 * Gets the recorder.
+	 *
+	 * @return the recorder, or null if not recording
+	 */
+	public SessionRecorder getRecorder() {
+		return recorder;
+	}
+
+	/**
+	 * Sets the recorder to which every block of polled samples is appended.
+	 * Closing the recorder remains the responsibility of the caller.
+	 *
+	 * @param recorder
+	 *          the new recorder, null to stop recording
+	 */
+	public void setRecorder(SessionRecorder recorder) {
+		this.recorder = recorder;
+	}
+
+	/**
+	 * Gets the exporter.
+	 *
+	 * @return the exporter, or null if not exporting
+	 */
+	public AsyncExporter getExporter() {
+		return exporter;
+	}
+
+	/**
+	 * Sets the exporter to which every block of polled samples is offered.
+	 * Closing the exporter remains the responsibility of the caller.
+	 *
+	 * @param exporter
+	 *          the new exporter, null to stop exporting
+	 */
+	public void setExporter(AsyncExporter exporter) {
+		this.exporter = exporter;
+	}
+
+	private void started() {
+		running.set(true);
+		keepingUp = 0;
+		nextSequence = 0;
+		streamGaps.set(0);
+		missedSamples.set(0);
+		startImpl();
+		schedulePoll(pollPeriod);
+
+		listeners.forEach(l -> l.engineStarted());
+	}
+
+	private void stopped() {
+		running.set(false);
+		unschedulePoll();
+		stopImpl();
+
+		listeners.forEach(l -> l.engineStopped());
+	}
+
+	private synchronized void schedulePoll(long period) {
+		if (period != effectivePollPeriod) log.info("{} polling every {} ms", getClass().getSimpleName(), period);
+		effectivePollPeriod = period;
+
+		if (streaming) {
+			if (stream != null) return;
+
+			AcquisitionHub hub = AcquisitionHub.getHub(getConnection());
+			metrics.setFetchHistogram(hub.getFetchLatency());
+			stream = hub.stream(b -> streamed(b));
+		} else if (acquisition == null) {
+			AcquisitionHub hub = AcquisitionHub.getHub(getConnection());
+			metrics.setFetchHistogram(hub.getFetchLatency());
+			acquisition = hub.subscribe(getPollChannel(), period, t -> polled(t));
+		} else {
+			acquisition.setPeriod(period);
+		}
+	}
+
+	private synchronized void unschedulePoll() {
+		if (acquisition != null) acquisition.unsubscribe();
+		acquisition = null;
+
+		if (stream != null) stream.unsubscribe();
+		stream = null;
+	}
+
+	private void streamed(SampleBlock block) {
+		try {
+			accept(block);
+		} catch (Throwable e) {
+			log.error("Unexpected exception", e);
+		}
+	}
+
+	private void polled(double[][] samples) {
+		try {
+			// sampled before this tick's block is submitted, which would
+			// otherwise always be found waiting
+			boolean behind = adaptive && isBehind();
+
+			accept(samples);
+			if (adaptive) adapt(behind);
+		} catch (Throwable e) {
+			log.error("Unexpected exception", e);
+		}
+	}
+
+	private void adapt(boolean behind) {
+		long current = effectivePollPeriod;
+		long next = current;
+
+		if (isHidden()) {
+			next = maxPollPeriod;
+		} else if (behind) {
+			keepingUp = 0;
+			next = Math.min(maxPollPeriod, current * 2);
+		} else if (++keepingUp >= KEEPING_UP_TICKS) {
+			keepingUp = 0;
+			next = Math.max(Math.min(minPollPeriod, pollPeriod), current * 3 / 4);
+		}
+
+		if (next != current && running.get()) schedulePoll(next);
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.engine;
+
+import com.github.mrstampy.esp.multiconnectionsocket.ConnectionEvent.State;
+import com.github.mrstampy.esplab.acquisition.SampleListener;
+
+/**
+ * The listener interface for following the lifecycle of an
+ * {@link AcquisitionEngine}, typically implemented by a view over the engine.
+ * The samples of each poll are delivered on the polling thread once the
+ * engine has processed them.
+ */
+public interface EngineListener extends SampleListener {
+
+	/**
+	 * Invoked when the engine's connection has started and polling has begun.
+	 */
+	void engineStarted();
+
+	/**
+	 * Invoked when the engine's connection has stopped, normally or in error.
+	 */
+	void engineStopped();
+
+	/**
+	 * Invoked after {@link #engineStopped()} when the connection was lost.
+	 *
+	 * @param state
+	 *          the error state
+	 */
+	void connectionError(State state);
+
+	/**
+	 * Returns true if the listener is not keeping up with the samples being
+	 * delivered, to slow an adaptive poll.
+	 *
+	 * @return true, if behind
+	 */
+	default boolean isBehind() {
+		return false;
+	}
+
+	/**
+	 * Returns true if the listener cannot currently be seen. An adaptive poll
+	 * slows to its maximum while all listeners are hidden.
+	 *
+	 * @return true, if hidden
+	 */
+	default boolean isHidden() {
+		return false;
+	}
+}
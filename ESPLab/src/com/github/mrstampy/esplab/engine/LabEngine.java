@@ -0,0 +1,482 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.github.mrstampy.esp.dsp.lab.EspWindowFunction;
+import com.github.mrstampy.esp.dsp.lab.FFTType;
+import com.github.mrstampy.esp.dsp.lab.Lab;
+import com.github.mrstampy.esp.dsp.lab.RawEspConnection;
+import com.github.mrstampy.esplab.acquisition.AcquisitionHub;
+import com.github.mrstampy.esplab.buffer.SampleWindow;
+import com.github.mrstampy.esplab.connection.LabConnectionView;
+import com.github.mrstampy.esplab.dsp.DspPipeline;
+import com.github.mrstampy.esplab.dsp.HandOffPolicy;
+import com.github.mrstampy.esplab.dsp.WindowTables;
+import com.github.mrstampy.esplab.io.AsyncExporter;
+import com.github.mrstampy.esplab.io.SessionRecorder;
+import com.github.mrstampy.esplab.metrics.Stage;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class LabEngine is an {@link AcquisitionEngine} which processes the
+ * polled samples with one or more {@link Lab}s through a {@link DspPipeline}.
+ * With a single lab the lab's channel is polled; with several the samples of
+ * all channels are polled and fanned out to the labs by channel.<br>
+ * <br>
+ * Processed spectra are available from the labs' own signal processed
+ * listeners or, for views, by setting a render request and collecting the
+ * latest spectra from {@link DspPipeline#pollRender(int)}.<br>
+ * <br>
+ * When streaming the blocks of new samples are appended to a
+ * {@link SampleWindow} of {@link #getStreamWindow()} samples per channel, and
+ * the full window is submitted to the labs once per poll period or, with a
+ * {@link #setHop(int)}, every hop samples: a short time transform whose
+ * frames overlap by (window - hop) samples, so that the spectral update rate
+ * follows the sample rate rather than the poll. Frames may be windowed by the
+ * engine with the cached coefficients of {@link WindowTables}.
+ */
+public class LabEngine extends AcquisitionEngine {
+
+	/** The default number of samples per channel processed when streaming. */
+	public static final int DEFAULT_STREAM_WINDOW = 512;
+
+	private List<Lab> labs;
+	private volatile DspPipeline pipeline;
+	private volatile Runnable renderRequest;
+
+	private volatile SampleWindow window = new SampleWindow(DEFAULT_STREAM_WINDOW);
+	private long lastSubmit;
+	private volatile int hop;
+	private volatile double overlap = -1;
+	private volatile EspWindowFunction frameWindow;
+	private volatile LabConnectionView view;
+	private volatile boolean backlogged;
+
+	/**
+	 * Instantiates a new lab engine for a single lab, following the lab's
+	 * connection.
+	 *
+	 * @param lab
+	 *          the lab
+	 */
+	public LabEngine(Lab lab) {
+		super();
+		getMetrics().addBlocksDroppedSource(() -> pipeline.getAcquisitionDropped());
+		setLab(lab);
+	}
+
+	/**
+	 * Instantiates a new lab engine for several labs, each of which should be
+	 * set to a different channel of the same connection.
+	 *
+	 * @param labs
+	 *          the labs
+	 */
+	public LabEngine(List<Lab> labs) {
+		super();
+		if (labs == null || labs.isEmpty()) throw new IllegalArgumentException("No labs specified");
+		getMetrics().addBlocksDroppedSource(() -> pipeline.getAcquisitionDropped());
+
+		this.labs = Collections.unmodifiableList(new ArrayList<>(labs));
+		pipeline = prepare(new DspPipeline(this.labs, HandOffPolicy.LATEST_WINS, DspPipeline.DEFAULT_CAPACITY,
+				() -> renderRequested()));
+
+		setConnection(LabConnectionView.unwrap(labs.get(0).getConnection()));
+	}
+
+	/**
+	 * Replaces the single lab, following the new lab's connection. The display
+	 * averaging and baseline of the previous lab are carried over.
+	 *
+	 * @param lab
+	 *          the new lab
+	 */
+	public void setLab(Lab lab) {
+		if (labs != null && labs.size() > 1) throw new IllegalStateException("Cannot set the lab of a multi lab engine");
+
+		DspPipeline old = pipeline;
+		if (old != null) old.stop();
+
+		RawEspConnection connection = getConnection();
+		if (labs != null && connection != null) labs.forEach(l -> l.setConnection(connection));
+
+		labs = Collections.singletonList(lab);
+		DspPipeline replacement = new DspPipeline(lab, HandOffPolicy.LATEST_WINS, DspPipeline.DEFAULT_CAPACITY,
+				() -> renderRequested());
+		if (old != null) {
+			replacement.getAverager().configure(old.getAverager());
+			replacement.setBaseline(old.getBaseline());
+			replacement.setZScores(old.isZScores());
+		}
+		pipeline = prepare(replacement);
+
+		setConnection(LabConnectionView.unwrap(lab.getConnection()));
+	}
+
+	/**
+	 * Gets the single lab, or the first of several.
+	 *
+	 * @return the lab
+	 */
+	public Lab getLab() {
+		return labs.get(0);
+	}
+
+	/**
+	 * Gets the labs.
+	 *
+	 * @return the labs
+	 */
+	public List<Lab> getLabs() {
+		return labs;
+	}
+
+	/**
+	 * Gets the pipeline processing the samples, for access to the hand off
+	 * policy, queue depths and processed spectra.
+	 *
+	 * @return the pipeline
+	 */
+	public DspPipeline getPipeline() {
+		return pipeline;
+	}
+
+	/**
+	 * Sets the render request, invoked on a DSP thread at most once per tick
+	 * when processed spectra are waiting to be collected.
+	 *
+	 * @param renderRequest
+	 *          the new render request, null for none
+	 */
+	public void setRenderRequest(Runnable renderRequest) {
+		this.renderRequest = renderRequest;
+	}
+
+	/**
+	 * Gets the number of samples per channel processed when streaming.
+	 *
+	 * @return the stream window
+	 */
+	public int getStreamWindow() {
+		return window.getLength();
+	}
+
+	/**
+	 * Sets the number of samples per channel processed when streaming, which
+	 * should match the buffer size the labs expect of the connection. Any
+	 * samples in the current window are discarded.
+	 *
+	 * @param samples
+	 *          the new stream window
+	 */
+	public void setStreamWindow(int samples) {
+		window = new SampleWindow(samples);
+
+		double o = overlap;
+		if (o >= 0) hop = hopFor(o, samples);
+	}
+
+	/**
+	 * Gets the hop.
+	 *
+	 * @return the hop, 0 if frames are submitted once per poll period
+	 */
+	public int getHop() {
+		return hop;
+	}
+
+	/**
+	 * Sets the number of new samples between the frames submitted when
+	 * streaming. A hop of half the stream window is 50% overlap, a quarter 75%.
+	 * A hop set explicitly is kept should the stream window change.
+	 *
+	 * @param samples
+	 *          the new hop, 0 to submit once per poll period
+	 */
+	public void setHop(int samples) {
+		if (samples < 0) throw new IllegalArgumentException("Hop must be >= 0: " + samples);
+
+		overlap = -1;
+		hop = samples;
+	}
+
+	/**
+	 * Sets the hop from the overlap of successive frames. The overlap is kept
+	 * and the hop derived again should the stream window change.
+	 *
+	 * @param overlap
+	 *          the overlap, 0 - 1 exclusive of 1, 0 to submit once per poll
+	 *          period
+	 */
+	public void setOverlap(double overlap) {
+		if (overlap < 0 || overlap >= 1) throw new IllegalArgumentException("Overlap must be >= 0 and < 1: " + overlap);
+
+		this.overlap = overlap;
+		hop = hopFor(overlap, getStreamWindow());
+	}
+
+	/**
+	 * Gets the overlap.
+	 *
+	 * @return the overlap, or -1 if the hop was set explicitly
+	 */
+	public double getOverlap() {
+		return overlap;
+	}
+
+	private int hopFor(double overlap, int window) {
+		return overlap == 0 ? 0 : Math.max(1, (int) Math.round(window * (1 - overlap)));
+	}
+
+	/**
+	 * Gets the frame window.
+	 *
+	 * @return the frame window, null if none
+	 */
+	public EspWindowFunction getFrameWindow() {
+		return frameWindow;
+	}
+
+	/**
+	 * Sets the window function the engine applies, with the cached tables of
+	 * {@link WindowTables}, to each block or streamed frame before submission.
+	 * Labs without an FFT are given their samples unwindowed. While running the
+	 * labs are given a {@link LabConnectionView} reporting a rectangular window,
+	 * or the frame window itself should {@link WindowTables} not support it, so
+	 * that samples are windowed once and the window function of the connection,
+	 * shared by other labs, is unchanged.
+	 *
+	 * @param frameWindow
+	 *          the new frame window, null for none
+	 */
+	public void setFrameWindow(EspWindowFunction frameWindow) {
+		this.frameWindow = frameWindow;
+
+		LabConnectionView v = view;
+		if (v != null) v.setWindowFunction(labWindowFor(frameWindow));
+	}
+
+	// the window the labs apply themselves, null for the connection's
+	private EspWindowFunction labWindowFor(EspWindowFunction fw) {
+		if (fw == null) return null;
+
+		return WindowTables.isSupported(fw) ? EspWindowFunction.RECTANGULAR : fw;
+	}
+
+	/**
+	 * Sets the connection of the engine and of the labs.
+	 *
+	 * @param connection
+	 *          the new connection
+	 * @see AcquisitionEngine#setConnection(RawEspConnection)
+	 */
+	@Override
+	public void setConnection(RawEspConnection connection) {
+		if (connection == null) {
+			view = null;
+		} else {
+			LabConnectionView v = new LabConnectionView(connection);
+			v.setWindowFunction(labWindowFor(frameWindow));
+			view = v;
+			labs.forEach(l -> l.setConnection(isRunning() ? v : connection));
+		}
+
+		super.setConnection(connection);
+	}
+
+	/**
+	 * Returns the single lab's channel, or {@link AcquisitionHub#ALL_CHANNELS}
+	 * for several labs.
+	 *
+	 * @return the poll channel
+	 */
+	@Override
+	public int getPollChannel() {
+		return labs.size() > 1 ? AcquisitionHub.ALL_CHANNELS : labs.get(0).getChannel();
+	}
+
+	/**
+	 * Records processed spectra as well as the polled samples.
+	 *
+	 * @param recorder
+	 *          the new recorder, null to stop recording
+	 * @see AcquisitionEngine#setRecorder(SessionRecorder)
+	 */
+	@Override
+	public void setRecorder(SessionRecorder recorder) {
+		super.setRecorder(recorder);
+		pipeline.setRecorder(recorder);
+	}
+
+	/**
+	 * Exports displayed spectra as well as the polled samples.
+	 *
+	 * @param exporter
+	 *          the new exporter, null to stop exporting
+	 * @see AcquisitionEngine#setExporter(AsyncExporter)
+	 */
+	@Override
+	public void setExporter(AsyncExporter exporter) {
+		super.setExporter(exporter);
+		pipeline.setExporter(exporter);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esplab.engine.AcquisitionEngine#process(double[][])
+	 */
+	@Override
+	protected void process(double[][] samples) {
+		if (isStreaming()) {
+			processStreamed(samples);
+		} else {
+			EspWindowFunction fw = frameWindow;
+			submit(isWindowed(fw) ? window(fw, samples) : samples);
+		}
+	}
+
+	// the polled block may be shared with other subscribers, so is copied
+	private double[][] window(EspWindowFunction fw, double[][] samples) {
+		double[][] frame = new double[samples.length][];
+		for (int i = 0; i < samples.length; i++) {
+			frame[i] = samples[i].clone();
+		}
+
+		WindowTables.apply(fw, frame);
+
+		return frame;
+	}
+
+	private boolean isWindowed(EspWindowFunction fw) {
+		return fw != null && labs.get(0).getFftType() != FFTType.no_fft && WindowTables.isSupported(fw);
+	}
+
+	// notes whether the previous block was still waiting, before this one joins it
+	private void submit(double[][] samples) {
+		DspPipeline p = pipeline;
+		backlogged = p.getAcquisitionDepth() > 0;
+		p.submit(samples);
+	}
+
+	private void processStreamed(double[][] samples) {
+		SampleWindow sw = window;
+		int h = hop;
+		if (h > 0) {
+			processHops(sw, samples, h);
+			return;
+		}
+
+		sw.append(samples);
+		if (!sw.isFull()) return;
+
+		long now = System.nanoTime();
+		if (now - lastSubmit < TimeUnit.MILLISECONDS.toNanos(getEffectivePollPeriod())) return;
+
+		lastSubmit = now;
+		submitFrame(sw);
+	}
+
+	// appends up to each hop boundary in turn so that no frame is skipped
+	private void processHops(SampleWindow sw, double[][] samples, int h) {
+		int num = samples.length == 0 ? 0 : samples[0].length;
+		int offset = 0;
+
+		while (offset < num) {
+			int toBoundary = h - (int) (sw.getAppended() % h);
+			int n = Math.min(toBoundary, num - offset);
+
+			sw.append(samples, offset, n);
+			offset += n;
+
+			if (n == toBoundary && sw.isFull()) submitFrame(sw);
+		}
+	}
+
+	private void submitFrame(SampleWindow sw) {
+		double[][] frame = sw.snapshot();
+
+		EspWindowFunction fw = frameWindow;
+		if (isWindowed(fw)) WindowTables.apply(fw, frame);
+
+		submit(frame);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esplab.engine.AcquisitionEngine#startImpl()
+	 */
+	@Override
+	protected void startImpl() {
+		window.clear();
+		lastSubmit = 0;
+		backlogged = false;
+
+		LabConnectionView v = view;
+		if (v != null) labs.forEach(l -> l.setConnection(v));
+
+		pipeline.start();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esplab.engine.AcquisitionEngine#stopImpl()
+	 */
+	@Override
+	protected void stopImpl() {
+		pipeline.stop();
+
+		RawEspConnection connection = getConnection();
+		if (connection != null) labs.forEach(l -> l.setConnection(connection));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esplab.engine.AcquisitionEngine#isBehind()
+	 */
+	@Override
+	protected boolean isBehind() {
+		if (backlogged || pipeline.getAcquisitionDepth() > 1) return true;
+
+		// spectra are only collected from the pipeline when rendering
+		return (renderRequest != null && pipeline.getRenderDepth() > 0) || super.isBehind();
+	}
+
+	private DspPipeline prepare(DspPipeline pipeline) {
+		pipeline.setRecorder(getRecorder());
+		pipeline.setExporter(getExporter());
+		pipeline.setProcessLatency(getMetrics().getHistogram(Stage.DSP));
+		if (isRunning()) pipeline.start();
+
+		return pipeline;
+	}
+
+	private void renderRequested() {
+		Runnable r = renderRequest;
+		if (r != null) r.run();
+	}
+}
@@ -18,11 +18,12 @@
  */
 package com.github.mrstampy.esplab.gui;
 
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
 import javafx.geometry.Pos;
+import javafx.scene.Scene;
 import javafx.scene.chart.Axis;
 import javafx.scene.chart.NumberAxis;
 import javafx.scene.chart.XYChart;
@@ -34,6 +35,8 @@ import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Pane;
 import javafx.scene.layout.Region;
+import javafx.stage.Stage;
+import javafx.stage.Window;
 
 import org.controlsfx.dialog.Dialogs;
 import org.reactfx.EventStreams;
@@ -42,8 +45,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import rx.Scheduler;
-import rx.Scheduler.Inner;
-import rx.functions.Action1;
 import rx.schedulers.Schedulers;
 
 import com.github.mrstampy.esp.dsp.lab.RawEspConnection;
@@ -51,10 +52,19 @@ import com.github.mrstampy.esp.multiconnectionsocket.ConnectionEvent;
 import com.github.mrstampy.esp.multiconnectionsocket.ConnectionEvent.State;
 import com.github.mrstampy.esp.multiconnectionsocket.ConnectionEventListener;
 import com.github.mrstampy.esp.multiconnectionsocket.MultiConnectionSocketException;
+import com.github.mrstampy.esplab.acquisition.AcquisitionHub;
+import com.github.mrstampy.esplab.engine.AcquisitionEngine;
+import com.github.mrstampy.esplab.engine.EngineListener;
+import com.github.mrstampy.esplab.io.AsyncExporter;
+import com.github.mrstampy.esplab.io.SessionRecorder;
+import com.github.mrstampy.esplab.metrics.EngineMetrics;
 
 // TODO: Auto-generated Javadoc
 /**
- * The Class AbstractGraph.
+ * The Class AbstractGraph is a view over an {@link AcquisitionEngine}. The
+ * engine follows the connection, polls it and processes the samples; the
+ * graph is notified through the engine's lifecycle and displays what it is
+ * given.
  *
  * @param <XAXIS>
  *          the generic type
@@ -62,7 +72,16 @@ import com.github.mrstampy.esp.multiconnectionsocket.MultiConnectionSocketExcept
 public abstract class AbstractGraph<XAXIS extends Object> implements ConnectionEventListener {
 	private static final Logger log = LoggerFactory.getLogger(AbstractGraph.class);
 
-	private RawEspConnection connection;
+	/** The default period between polls of the connection, in millis. */
+	public static final long DEFAULT_POLL_PERIOD = AcquisitionEngine.DEFAULT_POLL_PERIOD;
+
+	/** The default fastest adaptive poll period, in millis. */
+	public static final long DEFAULT_MIN_POLL_PERIOD = AcquisitionEngine.DEFAULT_MIN_POLL_PERIOD;
+
+	/** The default slowest adaptive poll period, in millis. */
+	public static final long DEFAULT_MAX_POLL_PERIOD = AcquisitionEngine.DEFAULT_MAX_POLL_PERIOD;
+
+	private final AcquisitionEngine engine;
 	private Subscription subscription;
 
 	/** The chart. */
@@ -80,49 +99,99 @@ public abstract class AbstractGraph<XAXIS extends Object> implements ConnectionE
 	/** The start stop. */
 	protected ToggleButton startStop;
 
+	/** The metrics overlay, hidden unless {@link #setShowMetrics(boolean)}. */
+	protected MetricsOverlay metricsOverlay;
+
 	/** The running. */
 	protected AtomicBoolean running = new AtomicBoolean(false);
 
 	/** The scheduler. */
 	protected Scheduler scheduler = Schedulers.io();
-	private rx.Subscription snap;
 
 	private AtomicBoolean errorShowing = new AtomicBoolean();
 
+	private volatile boolean hidden;
+	private InvalidationListener visibility = o -> updateHidden();
+	private Scene watchedScene;
+	private Window watchedWindow;
+
 	/**
-	 * Instantiates a new abstract graph.
+	 * Instantiates a new abstract graph over an {@link AcquisitionEngine}
+	 * polling {@link #getPollChannel()}.
 	 */
 	public AbstractGraph() {
+		engine = new AcquisitionEngine(() -> getPollChannel());
+		init();
+	}
+
+	/**
+	 * Instantiates a new abstract graph over the specified engine.
+	 *
+	 * @param engine
+	 *          the engine
+	 */
+	protected AbstractGraph(AcquisitionEngine engine) {
+		this.engine = engine;
+		init();
+	}
+
+	private void init() {
 		initButtons();
+		metricsOverlay = new MetricsOverlay(getMetrics());
+		startStop.sceneProperty().addListener(visibility);
+		updateHidden();
+		engine.addEngineListener(new View());
+		if (engine.isRunning()) preStart();
 	}
 
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see com.github.mrstampy.esp.multiconnectionsocket.ConnectionEventListener#
-	 * connectionEventPerformed
-	 * (com.github.mrstampy.esp.multiconnectionsocket.ConnectionEvent)
+	/**
+	 * Passes the event to the engine, which is the listener registered with the
+	 * connection.
+	 *
+	 * @param e
+	 *          the e
+	 * @see AcquisitionEngine#connectionEventPerformed(ConnectionEvent)
 	 */
 	@Override
 	public void connectionEventPerformed(ConnectionEvent e) {
-		switch (e.getState()) {
-		case STARTED:
-			preStart();
-			start();
-			break;
-		case STOPPED:
-			preStop();
-			stop();
-			break;
-		case ERROR_STOPPED:
-		case ERROR_UNBOUND:
-			preStop();
-			stop();
-			connectionError(e.getState());
-			break;
-		default:
-			break;
-		}
+		engine.connectionEventPerformed(e);
+	}
+
+	/**
+	 * Gets the engine.
+	 *
+	 * @return the engine
+	 */
+	public AcquisitionEngine getEngine() {
+		return engine;
+	}
+
+	/**
+	 * Gets the metrics of the engine and this graph.
+	 *
+	 * @return the metrics
+	 */
+	public EngineMetrics getMetrics() {
+		return engine.getMetrics();
+	}
+
+	/**
+	 * Shows or hides the on screen metrics summary.
+	 *
+	 * @param show
+	 *          true to show
+	 */
+	public void setShowMetrics(boolean show) {
+		metricsOverlay.setVisible(show);
+	}
+
+	/**
+	 * Checks if the metrics summary is shown.
+	 *
+	 * @return true, if shown
+	 */
+	public boolean isShowMetrics() {
+		return metricsOverlay.isVisible();
 	}
 
 	/**
@@ -139,7 +208,6 @@ public abstract class AbstractGraph<XAXIS extends Object> implements ConnectionE
 
 	private void preStop() {
 		running.set(false);
-		if (snap != null) snap.unsubscribe();
 		if (startStop.isSelected()) {
 			startStop.setSelected(false);
 			startStop.setText("Start");
@@ -151,17 +219,6 @@ public abstract class AbstractGraph<XAXIS extends Object> implements ConnectionE
 	 */
 	protected void preStart() {
 		running.set(true);
-		snap = scheduler.schedulePeriodically(new Action1<Scheduler.Inner>() {
-
-			@Override
-			public void call(Inner t1) {
-				try {
-					graphAccept(getConnection().getCurrentFor(getChannel()));
-				} catch(Throwable e) {
-					log.error("Unexpected exception", e);
-				}
-			}
-		}, 250, 250, TimeUnit.MILLISECONDS);
 
 		if (!startStop.isSelected()) {
 			startStop.setSelected(true);
@@ -169,6 +226,204 @@ public abstract class AbstractGraph<XAXIS extends Object> implements ConnectionE
 		}
 	}
 
+	/**
+	 * Returns true if the stages downstream of the poll are not keeping up with
+	 * the samples being delivered. Used to slow the poll when adaptive.
+	 *
+	 * @return true, if behind
+	 * @see #setAdaptive(boolean)
+	 */
+	protected boolean isBehind() {
+		return false;
+	}
+
+	/**
+	 * Returns true if the graph cannot currently be seen, ie. its window is
+	 * minimized or not showing. Safe to call from any thread; the state is
+	 * tracked on the FX thread as the scene and window change.
+	 *
+	 * @return true, if hidden
+	 */
+	protected boolean isHidden() {
+		return hidden;
+	}
+
+	// FX thread only, reading each property so that its invalidation fires again
+	private void updateHidden() {
+		Scene scene = startStop.getScene();
+		if (scene != watchedScene) {
+			if (watchedScene != null) watchedScene.windowProperty().removeListener(visibility);
+			if (scene != null) scene.windowProperty().addListener(visibility);
+			watchedScene = scene;
+		}
+
+		Window window = scene == null ? null : scene.getWindow();
+		if (window != watchedWindow) {
+			if (watchedWindow != null) watchWindow(watchedWindow, false);
+			if (window != null) watchWindow(window, true);
+			watchedWindow = window;
+		}
+
+		if (window == null) {
+			hidden = false;
+		} else {
+			boolean showing = window.isShowing();
+			boolean iconified = window instanceof Stage && ((Stage) window).isIconified();
+			hidden = !showing || iconified;
+		}
+	}
+
+	private void watchWindow(Window window, boolean watch) {
+		if (watch) {
+			window.showingProperty().addListener(visibility);
+			if (window instanceof Stage) ((Stage) window).iconifiedProperty().addListener(visibility);
+		} else {
+			window.showingProperty().removeListener(visibility);
+			if (window instanceof Stage) ((Stage) window).iconifiedProperty().removeListener(visibility);
+		}
+	}
+
+	/**
+	 * Gets the configured poll period.
+	 *
+	 * @return the poll period in millis
+	 * @see AcquisitionEngine#getPollPeriod()
+	 */
+	public long getPollPeriod() {
+		return engine.getPollPeriod();
+	}
+
+	/**
+	 * Sets the period between polls of the connection.
+	 *
+	 * @param millis
+	 *          the new poll period
+	 * @see AcquisitionEngine#setPollPeriod(long)
+	 */
+	public void setPollPeriod(long millis) {
+		engine.setPollPeriod(millis);
+	}
+
+	/**
+	 * Sets the range within which an adaptive poll period may vary.
+	 *
+	 * @param minMillis
+	 *          the fastest period
+	 * @param maxMillis
+	 *          the slowest period
+	 * @see AcquisitionEngine#setPollPeriodRange(long, long)
+	 */
+	public void setPollPeriodRange(long minMillis, long maxMillis) {
+		engine.setPollPeriodRange(minMillis, maxMillis);
+	}
+
+	/**
+	 * Checks if the poll period is adaptive.
+	 *
+	 * @return true, if adaptive
+	 */
+	public boolean isAdaptive() {
+		return engine.isAdaptive();
+	}
+
+	/**
+	 * If true the poll period adapts to whether the graph {@link #isBehind()}
+	 * or {@link #isHidden()}.
+	 *
+	 * @param adaptive
+	 *          the new adaptive
+	 * @see AcquisitionEngine#setAdaptive(boolean)
+	 */
+	public void setAdaptive(boolean adaptive) {
+		engine.setAdaptive(adaptive);
+	}
+
+	/**
+	 * Checks if streaming.
+	 *
+	 * @return true, if streaming
+	 */
+	public boolean isStreaming() {
+		return engine.isStreaming();
+	}
+
+	/**
+	 * If true the graph receives every sample of the connection exactly once
+	 * rather than the latest samples on each poll.
+	 *
+	 * @param streaming
+	 *          the new streaming
+	 * @see AcquisitionEngine#setStreaming(boolean)
+	 */
+	public void setStreaming(boolean streaming) {
+		engine.setStreaming(streaming);
+	}
+
+	/**
+	 * Gets the poll period currently in effect.
+	 *
+	 * @return the effective poll period in millis
+	 * @see AcquisitionEngine#getEffectivePollPeriod()
+	 */
+	public long getEffectivePollPeriod() {
+		return engine.getEffectivePollPeriod();
+	}
+
+	/**
+	 * Gets the recorder.
+	 *
+	 * @return the recorder, or null if not recording
+	 */
+	public SessionRecorder getRecorder() {
+		return engine.getRecorder();
+	}
+
+	/**
+	 * Sets the recorder to which the engine appends every block of polled
+	 * samples.
+	 *
+	 * @param recorder
+	 *          the new recorder, null to stop recording
+	 * @see AcquisitionEngine#setRecorder(SessionRecorder)
+	 */
+	public void setRecorder(SessionRecorder recorder) {
+		engine.setRecorder(recorder);
+	}
+
+	/**
+	 * Gets the exporter.
+	 *
+	 * @return the exporter, or null if not exporting
+	 */
+	public AsyncExporter getExporter() {
+		return engine.getExporter();
+	}
+
+	/**
+	 * Sets the exporter to which the engine offers every block of polled
+	 * samples and, for graphs processing labs, every displayed spectrum. The
+	 * export is written on a thread of its own and never slows acquisition.
+	 *
+	 * @param exporter
+	 *          the new exporter, null to stop exporting
+	 * @see AcquisitionEngine#setExporter(AsyncExporter)
+	 */
+	public void setExporter(AsyncExporter exporter) {
+		engine.setExporter(exporter);
+	}
+
+	/**
+	 * Gets the channel whose samples are passed to
+	 * {@link #graphAccept(double[][])} by the default engine; by default
+	 * {@link #getChannel()}. Return {@link AcquisitionHub#ALL_CHANNELS} for the
+	 * samples of all channels.
+	 *
+	 * @return the poll channel
+	 */
+	protected int getPollChannel() {
+		return getChannel();
+	}
+
 	protected abstract int getChannel();
 
 	/**
@@ -218,7 +473,7 @@ public abstract class AbstractGraph<XAXIS extends Object> implements ConnectionE
 	 * @return the connection
 	 */
 	public RawEspConnection getConnection() {
-		return connection;
+		return engine.getConnection();
 	}
 
 	/**
@@ -229,7 +484,7 @@ public abstract class AbstractGraph<XAXIS extends Object> implements ConnectionE
 	 */
 	public void setConnection(RawEspConnection connection) {
 		preSetConnection();
-		this.connection = connection;
+		engine.setConnection(connection);
 		postSetConnection();
 	}
 
@@ -237,9 +492,6 @@ public abstract class AbstractGraph<XAXIS extends Object> implements ConnectionE
 	 * Pre set connection.
 	 */
 	protected void preSetConnection() {
-		if (connection == null) return;
-
-		connection.removeConnectionEventListener(this);
 		if (subscription != null) subscription.unsubscribe();
 	}
 
@@ -247,16 +499,10 @@ public abstract class AbstractGraph<XAXIS extends Object> implements ConnectionE
 	 * Post set connection.
 	 */
 	protected void postSetConnection() {
-		if(connection == null) return;
-		getConnection().addConnectionEventListener(this);
-		if (getConnection().isConnected()) {
-			preStart();
-			start();
-		}
 	}
 
 	/**
-	 * Graph accept.
+	 * Accepts the samples of each poll once the engine has processed them.
 	 *
 	 * @param samples
 	 *          the samples
@@ -328,4 +574,42 @@ public abstract class AbstractGraph<XAXIS extends Object> implements ConnectionE
 		return "Lost connection to the " + getConnection().getName() + ". Reset the connection and try again.";
 	}
 
+	/**
+	 * The engine listener through which the graph follows its engine.
+	 */
+	private class View implements EngineListener {
+
+		@Override
+		public void samplesAcquired(double[][] samples) {
+			graphAccept(samples);
+		}
+
+		@Override
+		public void engineStarted() {
+			preStart();
+			start();
+		}
+
+		@Override
+		public void engineStopped() {
+			preStop();
+			stop();
+		}
+
+		@Override
+		public void connectionError(State state) {
+			AbstractGraph.this.connectionError(state);
+		}
+
+		@Override
+		public boolean isBehind() {
+			return AbstractGraph.this.isBehind();
+		}
+
+		@Override
+		public boolean isHidden() {
+			return AbstractGraph.this.isHidden();
+		}
+	}
+
 }
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.gui;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javafx.collections.ObservableList;
+import javafx.scene.chart.XYChart.Data;
+import javafx.scene.chart.XYChart.Series;
+
+import com.github.mrstampy.esplab.dsp.AggregationMode;
+import com.github.mrstampy.esplab.dsp.BinAggregator;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class BarPainter paints spectra onto the bar series of the power
+ * graphs. The first (DC) element of the spectrum is not displayed; the
+ * remaining bins are painted one bar per bin or, when there are more bins than
+ * bars, one bar per bucket of bins aggregated with a {@link BinAggregator}.
+ * Bars whose value has not changed are not touched. FX thread only.
+ */
+class BarPainter {
+
+	private final Series<String, Number> series;
+
+	private BinAggregator aggregator = new BinAggregator(AggregationMode.MAX);
+	private int bins = -1;
+	private int maxBars = Integer.MAX_VALUE;
+	private double[] aggregated = new double[0];
+	private double[] painted = new double[0];
+
+	/**
+	 * Instantiates a new bar painter.
+	 *
+	 * @param series
+	 *          the series painted
+	 */
+	BarPainter(Series<String, Number> series) {
+		this.series = series;
+	}
+
+	/**
+	 * Sizes the series to the bins of the spectrum, excluding DC, with at most
+	 * the specified number of bars. Labels are the first bin of each bar. With
+	 * no bins beyond DC there are no bars.
+	 *
+	 * @param bins
+	 *          the bins
+	 * @param maxBars
+	 *          the maximum number of bars
+	 * @return true, if the series was resized
+	 */
+	boolean resize(int bins, int maxBars) {
+		this.maxBars = Math.max(1, maxBars);
+
+		int bars = bins < 1 ? 0 : Math.min(bins, this.maxBars);
+		if (bins == this.bins && bars == aggregated.length) return false;
+
+		this.bins = bins;
+
+		aggregated = new double[bars];
+		painted = new double[bars];
+		Arrays.fill(painted, Double.NaN);
+
+		List<Data<String, Number>> data = new ArrayList<>(bars);
+		for (int i = 0; i < bars; i++) {
+			int first = BinAggregator.bucketStart(i, bins, bars) + 1;
+			data.add(new Data<String, Number>(Integer.toString(first), 0));
+		}
+
+		series.getData().setAll(data);
+
+		return true;
+	}
+
+	/**
+	 * Paints the spectrum, resizing the series should its length have changed.
+	 *
+	 * @param spectrum
+	 *          the spectrum, including DC
+	 */
+	void paint(double[] spectrum) {
+		if (spectrum.length - 1 != bins) resize(spectrum.length - 1, maxBars);
+
+		int bars = aggregated.length;
+		if (bars == 0) return;
+
+		aggregator.aggregate(spectrum, 1, spectrum.length, aggregated, bars);
+
+		ObservableList<Data<String, Number>> data = series.getData();
+		for (int i = 0; i < bars; i++) {
+			double val = aggregated[i];
+			if (val == painted[i]) continue;
+
+			painted[i] = val;
+			data.get(i).setYValue(val);
+		}
+	}
+
+	/**
+	 * Sets all bars to zero.
+	 */
+	void clear() {
+		Arrays.fill(painted, 0);
+		series.getData().forEach(d -> d.setYValue(0));
+	}
+
+	/**
+	 * Gets the number of bins painted, excluding DC.
+	 *
+	 * @return the bins
+	 */
+	int getBins() {
+		return bins;
+	}
+
+	/**
+	 * Gets the aggregation mode.
+	 *
+	 * @return the aggregation mode
+	 */
+	AggregationMode getAggregationMode() {
+		return aggregator.getMode();
+	}
+
+	/**
+	 * Sets the aggregation mode.
+	 *
+	 * @param mode
+	 *          the new aggregation mode
+	 */
+	void setAggregationMode(AggregationMode mode) {
+		aggregator.setMode(mode);
+	}
+}
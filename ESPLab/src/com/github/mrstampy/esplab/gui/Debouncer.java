@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.gui;
+
+import javafx.animation.PauseTransition;
+import javafx.util.Duration;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class Debouncer runs an action once a burst of triggers has settled,
+ * ie. the delay after the last trigger, so that a control firing a change
+ * per pixel dragged applies its value once rather than on every change. FX
+ * thread only.
+ */
+class Debouncer {
+
+	/** The default delay. */
+	static final Duration DEFAULT_DELAY = Duration.millis(150);
+
+	private final PauseTransition pause;
+	private final Runnable action;
+	private boolean pending;
+
+	/**
+	 * Instantiates a new debouncer with the default delay.
+	 *
+	 * @param action
+	 *          the action
+	 */
+	Debouncer(Runnable action) {
+		this(DEFAULT_DELAY, action);
+	}
+
+	/**
+	 * Instantiates a new debouncer.
+	 *
+	 * @param delay
+	 *          the delay after the last trigger
+	 * @param action
+	 *          the action
+	 */
+	Debouncer(Duration delay, Runnable action) {
+		this.action = action;
+		pause = new PauseTransition(delay);
+		pause.setOnFinished(e -> flush());
+	}
+
+	/**
+	 * Runs the action after the delay, unless triggered again meanwhile.
+	 */
+	void trigger() {
+		pending = true;
+		pause.playFromStart();
+	}
+
+	/**
+	 * Runs the action now if triggered and not yet run.
+	 */
+	void flush() {
+		pause.stop();
+		if (!pending) return;
+
+		pending = false;
+		action.run();
+	}
+}
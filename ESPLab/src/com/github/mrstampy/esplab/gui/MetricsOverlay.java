@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.gui;
+
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.scene.control.Label;
+import javafx.util.Duration;
+
+import com.github.mrstampy.esplab.metrics.EngineMetrics;
+import com.github.mrstampy.esplab.metrics.Stage;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class MetricsOverlay is a label summarizing an {@link EngineMetrics}
+ * once a second while visible: the achieved fps, the 99th percentile of each
+ * stage in milliseconds and the dropped counts.
+ */
+public class MetricsOverlay extends Label {
+
+	private EngineMetrics metrics;
+	private Timeline timeline;
+
+	/**
+	 * Instantiates a new metrics overlay, initially hidden.
+	 *
+	 * @param metrics
+	 *          the metrics
+	 */
+	public MetricsOverlay(EngineMetrics metrics) {
+		this.metrics = metrics;
+
+		setStyle("-fx-font-family: monospace; -fx-font-size: 10;");
+
+		timeline = new Timeline(new KeyFrame(Duration.seconds(1), e -> update()));
+		timeline.setCycleCount(Animation.INDEFINITE);
+
+		visibleProperty().addListener((o, old, visible) -> visibilityChanged(visible));
+		managedProperty().bind(visibleProperty());
+		setVisible(false);
+	}
+
+	private void visibilityChanged(boolean visible) {
+		if (visible) {
+			update();
+			timeline.play();
+		} else {
+			timeline.stop();
+		}
+	}
+
+	private void update() {
+		setText(String.format("%.1f fps | p99 ms fetch %.2f dsp %.2f lag %.2f frame %.2f | dropped %d samples %d blocks",
+				metrics.getFps(), p99(Stage.FETCH), p99(Stage.DSP), p99(Stage.FX_LAG), p99(Stage.FRAME),
+				metrics.getSamplesDropped(), metrics.getBlocksDropped()));
+	}
+
+	private double p99(Stage stage) {
+		return metrics.getHistogram(stage).getPercentile(0.99) / 1e6;
+	}
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.gui;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javafx.application.Platform;
+import javafx.geometry.Pos;
+import javafx.geometry.Side;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.Pane;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.Region;
+
+import org.controlsfx.control.MasterDetailPane;
+
+import com.github.mrstampy.esp.dsp.lab.Lab;
+import com.github.mrstampy.esp.dsp.lab.RawEspConnection;
+import com.github.mrstampy.esplab.dsp.DspExecutor;
+import com.github.mrstampy.esplab.dsp.DspPipeline;
+import com.github.mrstampy.esplab.engine.LabEngine;
+import com.github.mrstampy.esplab.metrics.Stage;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class MultiChannelPowerGraph displays the band powers of several
+ * channels of one connection in a single grid. The connection is polled once
+ * per tick for all channels by its {@link LabEngine} and each channel's
+ * samples are fanned out to its own {@link Lab}. The labs of a tick are processed in
+ * parallel on the shared {@link DspExecutor} and joined, so all channels are
+ * painted together in a single FX update.<br>
+ * <br>
+ * Samples are taken from {@link RawEspConnection#getCurrent()}, one row per
+ * channel with channel 1 in the first row.
+ */
+public class MultiChannelPowerGraph extends AbstractGraph<String> {
+
+	private LabEngine labEngine;
+	private List<PowerBars> bars = new ArrayList<>();
+
+	private GridPane grid = new GridPane();
+
+	private volatile long renderRequested;
+	private Runnable renderer = () -> render();
+
+	/**
+	 * Instantiates a new multi channel power graph. All labs must share the
+	 * same connection and each should be set to a different channel.
+	 *
+	 * @param labs
+	 *          the labs, one per displayed channel
+	 */
+	public MultiChannelPowerGraph(List<Lab> labs) {
+		this(new LabEngine(labs));
+	}
+
+	private MultiChannelPowerGraph(LabEngine labEngine) {
+		super(labEngine);
+		this.labEngine = labEngine;
+		labEngine.setRenderRequest(() -> renderRequested());
+
+		initGrid();
+	}
+
+	private void initGrid() {
+		List<Lab> labs = getLabs();
+		int columns = (int) Math.ceil(Math.sqrt(labs.size()));
+
+		grid.setAlignment(Pos.CENTER);
+		grid.setHgap(5);
+		grid.setVgap(5);
+
+		for (int i = 0; i < labs.size(); i++) {
+			Lab lab = labs.get(i);
+
+			PowerBars pb = new PowerBars("Channel " + lab.getChannel(), lab.getNumBands());
+			bars.add(pb);
+
+			GridPane.setConstraints(pb.getChart(), i % columns, i / columns);
+			GridPane.setHgrow(pb.getChart(), Priority.ALWAYS);
+			GridPane.setVgrow(pb.getChart(), Priority.ALWAYS);
+			grid.getChildren().add(pb.getChart());
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.github.mrstampy.esplab.gui.AbstractGraph#getLayout()
+	 */
+	public Region getLayout() {
+		MasterDetailPane pane = new MasterDetailPane(Side.BOTTOM);
+		pane.setMinWidth(1000);
+		pane.setDividerPosition(0.9);
+
+		pane.setMasterNode(grid);
+		Pane buttons = getButtons();
+		buttons.getChildren().add(metricsOverlay);
+		pane.setDetailNode(buttons);
+
+		return pane;
+	}
+
+	/**
+	 * Gets the labs.
+	 *
+	 * @return the labs
+	 */
+	public List<Lab> getLabs() {
+		return labEngine.getLabs();
+	}
+
+	/**
+	 * Gets the pipeline processing the labs.
+	 *
+	 * @return the pipeline
+	 */
+	public DspPipeline getPipeline() {
+		return labEngine.getPipeline();
+	}
+
+	/**
+	 * Gets the engine processing the labs.
+	 *
+	 * @return the lab engine
+	 */
+	public LabEngine getLabEngine() {
+		return labEngine;
+	}
+
+	/**
+	 * Returns the first lab's channel; all channels of the labs are polled.
+	 *
+	 * @return the channel
+	 */
+	@Override
+	protected int getChannel() {
+		return getLabs().get(0).getChannel();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.github.mrstampy.esplab.gui.AbstractGraph#graphAccept(double[][])
+	 */
+	@Override
+	protected void graphAccept(double[][] samples) {
+		// processed by the engine, rendered on request
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.github.mrstampy.esplab.gui.AbstractGraph#start()
+	 */
+	@Override
+	protected void start() {
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.github.mrstampy.esplab.gui.AbstractGraph#stop()
+	 */
+	@Override
+	protected void stop() {
+		Platform.runLater(() -> bars.forEach(b -> b.clear()));
+	}
+
+	private void renderRequested() {
+		renderRequested = System.nanoTime();
+		Platform.runLater(renderer);
+	}
+
+	private void render() {
+		long start = System.nanoTime();
+		getMetrics().record(Stage.FX_LAG, start - renderRequested);
+
+		DspPipeline pipeline = getPipeline();
+		for (int i = 0; i < bars.size(); i++) {
+			double[] spectrum = pipeline.pollRender(i);
+			if (spectrum != null) bars.get(i).paint(spectrum);
+		}
+
+		getMetrics().frame(start);
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.gui;
+
+import javafx.scene.chart.BarChart;
+import javafx.scene.chart.CategoryAxis;
+import javafx.scene.chart.NumberAxis;
+import javafx.scene.chart.XYChart.Series;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class PowerBars is a band power bar chart for a single spectrum, as
+ * painted by the multi channel graphs with the same {@link BarPainter} as the
+ * {@link PowerGraph}: the first (DC) element of the spectrum is not
+ * displayed, and bars whose value has not changed are not touched.
+ */
+class PowerBars {
+
+	private BarChart<String, Number> chart;
+	private Series<String, Number> series = new Series<String, Number>();
+	private BarPainter painter = new BarPainter(series);
+
+	/**
+	 * Instantiates a new power bars.
+	 *
+	 * @param title
+	 *          the title
+	 * @param numBands
+	 *          the number of bands, including DC
+	 */
+	PowerBars(String title, int numBands) {
+		CategoryAxis xAxis = new CategoryAxis();
+		xAxis.setAutoRanging(true);
+
+		NumberAxis yAxis = new NumberAxis();
+		yAxis.setAutoRanging(true);
+
+		chart = new BarChart<String, Number>(xAxis, yAxis);
+		chart.setTitle(title);
+		chart.setAnimated(false);
+		chart.setLegendVisible(false);
+		chart.setHorizontalGridLinesVisible(false);
+		chart.setVerticalGridLinesVisible(false);
+		chart.setBarGap(0);
+		chart.setCategoryGap(1);
+
+		painter.resize(numBands - 1, Integer.MAX_VALUE);
+
+		chart.getData().add(series);
+	}
+
+	/**
+	 * Gets the chart.
+	 *
+	 * @return the chart
+	 */
+	BarChart<String, Number> getChart() {
+		return chart;
+	}
+
+	/**
+	 * Paint the spectrum. FX thread only.
+	 *
+	 * @param spectrum
+	 *          the spectrum
+	 */
+	void paint(double[] spectrum) {
+		painter.paint(spectrum);
+	}
+
+	/**
+	 * Sets all bars to zero. FX thread only.
+	 */
+	void clear() {
+		painter.clear();
+	}
+}
@@ -23,7 +23,6 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import javafx.application.Platform;
-import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.geometry.HPos;
 import javafx.geometry.Insets;
@@ -33,7 +32,6 @@ import javafx.geometry.VPos;
 import javafx.scene.Node;
 import javafx.scene.chart.BarChart;
 import javafx.scene.chart.CategoryAxis;
-import javafx.scene.chart.XYChart.Data;
 import javafx.scene.control.Button;
 import javafx.scene.control.CheckBox;
 import javafx.scene.control.ComboBox;
@@ -59,6 +57,15 @@ import com.github.mrstampy.esp.dsp.lab.EspWindowFunction;
 import com.github.mrstampy.esp.dsp.lab.FFTType;
 import com.github.mrstampy.esp.dsp.lab.Lab;
 import com.github.mrstampy.esp.dsp.lab.PassFilter;
+import com.github.mrstampy.esplab.dsp.AggregationMode;
+import com.github.mrstampy.esplab.dsp.BaselineEstimator;
+import com.github.mrstampy.esplab.dsp.BaselineMode;
+import com.github.mrstampy.esplab.dsp.DspPipeline;
+import com.github.mrstampy.esplab.dsp.LabConfig;
+import com.github.mrstampy.esplab.dsp.SpectrumAverager;
+import com.github.mrstampy.esplab.dsp.SpectrumDisplayMode;
+import com.github.mrstampy.esplab.engine.LabEngine;
+import com.github.mrstampy.esplab.metrics.Stage;
 import com.sun.javafx.collections.ObservableListWrapper;
 
 // TODO: Auto-generated Javadoc
@@ -67,15 +74,23 @@ import com.sun.javafx.collections.ObservableListWrapper;
  */
 public class PowerGraph extends AbstractGraph<String> {
 
+	/** The narrowest a bar is drawn, in pixels, before bins are aggregated. */
+	public static final double MIN_BAR_WIDTH = 4;
+
+	private static final int MAX_TICK_MARKS = 100;
+
 	private ComboBox<FFTType> fftType = new ComboBox<FFTType>();
 	private Button calculateBaseline = new Button("Calculate Baseline");
 	private Button clearBaseline = new Button("Clear Baseline");
 	private CheckBox displayGraph = new CheckBox("Display Graph");
 	private ComboBox<EspWindowFunction> functions = new ComboBox<EspWindowFunction>();
 	private ComboBox<PassFilter> filters = new ComboBox<PassFilter>();
+	private ComboBox<SpectrumDisplayMode> displayModes = new ComboBox<SpectrumDisplayMode>();
+	private ComboBox<Integer> overlaps = new ComboBox<Integer>();
 	private CheckBox normalizeSignal = new CheckBox("Normalize Signal");
 	private CheckBox normalizeFft = new CheckBox("Normalize FFT");
 	private CheckBox absoluteValues = new CheckBox("Absolute Values");
+	private CheckBox zScores = new CheckBox("Z-Scores");
 
 	private RangeSlider bandPassSlider = new RangeSlider(1, 40, 1, 40);
 	private Slider highPassFactor = new Slider(1, 50, 1);
@@ -84,10 +99,24 @@ public class PowerGraph extends AbstractGraph<String> {
 	private TextField lowVal = new TextField();
 	private TextField highVal = new TextField();
 
-	private Lab lab;
+	private LabEngine labEngine;
 
 	private AtomicBoolean graphing = new AtomicBoolean(true);
 
+	// the controls change this snapshot, published to the pipeline once a
+	// burst of changes settles; dragging a slider fires a change per pixel
+	private LabConfig config;
+	private Debouncer publisher = new Debouncer(() -> publishConfig());
+
+	private BaselineEstimator baseline = new BaselineEstimator();
+	private Runnable baselineCompleter = () -> setBaseline();
+
+	private BarPainter painter = new BarPainter(series);
+	private double[] zeros = new double[0];
+	private volatile long renderRequested;
+	private Runnable renderer = () -> render();
+	private Runnable resetter = () -> paintPowers(zeros);
+
 	/**
 	 * Instantiates a new power graph.
 	 *
@@ -95,9 +124,16 @@ public class PowerGraph extends AbstractGraph<String> {
 	 *          the lab
 	 */
 	public PowerGraph(Lab lab) {
-		super();
-		setLab(lab);
-		lab.addSignalProcessedListener(t -> plot(t));
+		this(new LabEngine(lab));
+	}
+
+	private PowerGraph(LabEngine labEngine) {
+		super(labEngine);
+		this.labEngine = labEngine;
+		config = LabConfig.of(labEngine.getLab());
+		labEngine.setRenderRequest(() -> renderRequested());
+		labEngine.getPipeline().setBaseline(baseline);
+		baseline.setCompletion(() -> Platform.runLater(baselineCompleter));
 
 		initChart();
 		initComboBoxes();
@@ -114,9 +150,12 @@ public class PowerGraph extends AbstractGraph<String> {
 		toolTip(fftType, "Choose the type of FFT to apply to the signal");
 		toolTip(calculateBaseline, "Calculate a baseline for the signal");
 		toolTip(clearBaseline, "Clear the current baseline from the signal");
+		toolTip(zScores, "Display the z-score of each band against the baseline");
 		toolTip(displayGraph, "Display or suppress graphing of the processed signal");
 		toolTip(functions, "Choose the window function to apply to the signal (for real & log FFT's)");
 		toolTip(filters, "Choose the pass filter to apply to the signal");
+		toolTip(displayModes, "Choose how successive spectra are combined for display");
+		toolTip(overlaps, "Choose the percentage overlap of successive windows, 0 to process once per poll");
 		toolTip(normalizeFft, "Normalize the FFT values");
 		toolTip(absoluteValues, "Use absolute values");
 		toolTip(bandPassSlider, "Select the value or range for the pass filters");
@@ -130,38 +169,63 @@ public class PowerGraph extends AbstractGraph<String> {
 		calculateBaseline.setDisable(getConnection() == null || !getConnection().isConnected());
 		clearBaseline.addEventHandler(ActionEvent.ACTION, t -> clearBaselineClicked());
 		setClearBaselineEffect();
+		zScores.addEventHandler(ActionEvent.ACTION, t -> zScoresSelected());
 		displayGraph.addEventHandler(ActionEvent.ACTION, t -> displayGraphClicked());
 		displayGraph.fire();
 	}
 
 	private void setClearBaselineEffect() {
-		clearBaseline.setEffect(getLab().getBaseline() == 0 ? null : getBaselineEffect());
+		boolean none = getLab().getBaseline() == 0 && !baseline.hasBaseline();
+		clearBaseline.setEffect(none ? null : getBaselineEffect());
 	}
 
 	private Effect getBaselineEffect() {
 		return new DropShadow(10, Color.GOLD);
 	}
 
+	private void zScoresSelected() {
+		labEngine.getPipeline().setZScores(zScores.isSelected());
+		reset();
+	}
+
 	private void displayGraphClicked() {
 		graphing.set(displayGraph.isSelected());
 		if (!graphing.get()) reset();
 	}
 
 	private void clearBaselineClicked() {
+		if (baseline.isCalculating()) setBaseline();
 		getLab().resetBaseline();
+		baseline.reset();
 		setClearBaselineEffect();
+		reset();
 	}
 
+	// the baseline is the estimator's alone, applied by the pipeline to the
+	// lab's raw spectra; any baseline of the lab's own is cleared so that the
+	// two are not mixed. A continuous baseline runs until clicked again
 	private void calculateBaselineClicked() {
+		getLab().resetBaseline();
+
+		if (baseline.getMode() == BaselineMode.CONTINUOUS) {
+			if (baseline.isCalculating()) {
+				setBaseline();
+			} else {
+				baseline.start();
+				calculateBaseline.setText("Stop Baseline");
+				setClearBaselineEffect();
+			}
+			return;
+		}
+
 		calculateBaseline.setDisable(true);
 		calculateBaseline.setText("Calculating...");
-		getLab().calculateBaseline();
-		Observable.timer(10, TimeUnit.SECONDS).subscribe(a -> Platform.runLater(() -> setBaseline()));
+		baseline.start();
 	}
 
 	private void setBaseline() {
-		getLab().stopCalculateBaseline();
-		calculateBaseline.setDisable(false);
+		baseline.stop();
+		calculateBaseline.setDisable(!getEngine().isRunning());
 		calculateBaseline.setText("Calculate Baseline");
 		setClearBaselineEffect();
 	}
@@ -194,11 +258,13 @@ public class PowerGraph extends AbstractGraph<String> {
 	}
 
 	private void lowFactorChanged(double d) {
-		getLab().setLowPassFilterFactor(d);
+		config = config.withLowPassFilterFactor(d);
+		publisher.trigger();
 	}
 
 	private void highFactorChanged(double d) {
-		getLab().setHighPassFilterFactor(d);
+		config = config.withHighPassFilterFactor(d);
+		publisher.trigger();
 	}
 
 	private void initSlider(Slider slider) {
@@ -208,17 +274,19 @@ public class PowerGraph extends AbstractGraph<String> {
 	}
 
 	private void highBandPassValueChanged(double val) {
-		getLab().setHighPassFrequency(val);
+		config = config.withHighPassFrequency(val);
+		publisher.trigger();
 		highVal.setText(Double.toString(val));
 	}
 
 	private void lowBandPassValueChanged(double val) {
-		getLab().setLowPassFrequency(val);
+		config = config.withLowPassFrequency(val);
+		publisher.trigger();
 		lowVal.setText(Double.toString(val));
 	}
 
 	private void initSlider(RangeSlider slider) {
-		slider.setShowTickMarks(true);
+		slider.setShowTickMarks(slider.getMax() <= MAX_TICK_MARKS);
 		slider.setSnapToPixel(true);
 		slider.setSnapToTicks(true);
 		slider.setMajorTickUnit(1);
@@ -238,23 +306,37 @@ public class PowerGraph extends AbstractGraph<String> {
 	}
 
 	private void absoluteValuesSelected() {
-		getLab().setAbsoluteValues(absoluteValues.isSelected());
+		config = config.withAbsoluteValues(absoluteValues.isSelected());
+		publishNow();
 	}
 
 	private void normalizeSignalSelected() {
-		getLab().setNormalizeSignal(normalizeSignal.isSelected());
+		config = config.withNormalizeSignal(normalizeSignal.isSelected());
+		publishNow();
 	}
 
 	private void normalizeFftSelected() {
-		getLab().setNormalizeFft(normalizeFft.isSelected());
+		config = config.withNormalizeFft(normalizeFft.isSelected());
+		publishNow();
 		setAbsoluteEnabled();
 	}
 
+	// discrete changes are published at once, along with any pending
+	private void publishNow() {
+		publisher.trigger();
+		publisher.flush();
+	}
+
+	private void publishConfig() {
+		labEngine.getPipeline().setConfig(config);
+	}
+
 	private void initComboBoxes() {
 		functions.setItems(new ObservableListWrapper<>(Arrays.asList(EspWindowFunction.values())));
 		functions.setValue(getConnection().getWindowFunction());
+		windowFunctionSelected();
 
-		functions.addEventHandler(ActionEvent.ACTION, t -> getConnection().setWindowFunction(functions.getValue()));
+		functions.addEventHandler(ActionEvent.ACTION, t -> windowFunctionSelected());
 
 		filters.setItems(new ObservableListWrapper<>(Arrays.asList(PassFilter.values())));
 		filters.setValue(getLab().getPassFilter());
@@ -265,12 +347,39 @@ public class PowerGraph extends AbstractGraph<String> {
 		fftType.setValue(getLab().getFftType());
 
 		fftType.addEventHandler(ActionEvent.ACTION, t -> fftSelected());
+
+		displayModes.setItems(new ObservableListWrapper<>(Arrays.asList(SpectrumDisplayMode.values())));
+		displayModes.setValue(getAverager().getMode());
+
+		displayModes.addEventHandler(ActionEvent.ACTION, t -> displayModeSelected());
+
+		overlaps.setItems(new ObservableListWrapper<>(Arrays.asList(0, 50, 75, 90)));
+		overlaps.setValue(0);
+
+		overlaps.addEventHandler(ActionEvent.ACTION, t -> overlapSelected());
+	}
+
+	// windowed by the engine from cached tables, the connection left unchanged
+	private void windowFunctionSelected() {
+		labEngine.setFrameWindow(functions.getValue());
+	}
+
+	// overlapped windows are assembled from the continuous sample stream
+	private void overlapSelected() {
+		int overlap = overlaps.getValue();
+		labEngine.setOverlap(overlap / 100.0);
+		setStreaming(overlap > 0);
+	}
+
+	private void displayModeSelected() {
+		getAverager().setMode(displayModes.getValue());
 	}
 
 	private void fftSelected() {
 		setAbsoluteEnabled();
 		setNormalizeFftEnabled();
-		getLab().setFftType(fftType.getValue());
+		config = config.withFftType(fftType.getValue());
+		publishNow();
 	}
 
 	private void setNormalizeFftEnabled() {
@@ -279,7 +388,8 @@ public class PowerGraph extends AbstractGraph<String> {
 	}
 
 	private void filterSelected() {
-		getLab().setPassFilter(filters.getValue());
+		config = config.withPassFilter(filters.getValue());
+		publishNow();
 		setBandPassSliderEnabled();
 	}
 
@@ -332,11 +442,53 @@ public class PowerGraph extends AbstractGraph<String> {
 
 		series.setName("Frequency (Hz)");
 
-		for (int i = 1; i <= 40; i++) {
-			series.getData().add(new Data<String, Number>(Integer.toString(i), 0));
+		chart.getData().add(series);
+
+		resizeBars(getLab().getNumBands() - 1);
+		chart.widthProperty().addListener((o, old, newVal) -> resizeBars(painter.getBins()));
+	}
+
+	/**
+	 * Sizes the chart to the bins of the spectrum, excluding DC, with one bar
+	 * per bin or, when there are more bins than fit, one bar per bucket of
+	 * bins. Labels are the first bin of each bar. FX thread only.
+	 */
+	private void resizeBars(int bins) {
+		boolean changed = bins != painter.getBins();
+		painter.resize(bins, (int) (getChartWidth() / MIN_BAR_WIDTH));
+
+		if (changed) {
+			int max = Math.max(1, bins);
+			bandPassSlider.setMax(max);
+			if (bandPassSlider.getHighValue() > max) bandPassSlider.setHighValue(max);
+			if (bandPassSlider.getLowValue() > max) bandPassSlider.setLowValue(max);
+			bandPassSlider.setShowTickMarks(bins <= MAX_TICK_MARKS);
 		}
+	}
 
-		chart.getData().add(series);
+	private double getChartWidth() {
+		double width = chart.getWidth();
+		return width > 0 ? width : chart.getMinWidth();
+	}
+
+	/**
+	 * Gets the aggregation mode used when there are more bins than bars.
+	 *
+	 * @return the aggregation mode
+	 */
+	public AggregationMode getAggregationMode() {
+		return painter.getAggregationMode();
+	}
+
+	/**
+	 * Sets the aggregation mode used when there are more bins than bars.
+	 * Defaults to {@link AggregationMode#MAX}.
+	 *
+	 * @param mode
+	 *          the new aggregation mode
+	 */
+	public void setAggregationMode(AggregationMode mode) {
+		painter.setAggregationMode(mode);
 	}
 
 	/*
@@ -357,8 +509,8 @@ public class PowerGraph extends AbstractGraph<String> {
 		box.getChildren().addAll(displayGraph, getPreFftPane());
 
 		Pane buttons = getButtons();
-		buttons.getChildren().addAll(calculateBaseline, clearBaseline);
-		box.getChildren().addAll(buttons);
+		buttons.getChildren().addAll(calculateBaseline, clearBaseline, zScores);
+		box.getChildren().addAll(buttons, metricsOverlay);
 
 		pane.setDetailNode(box);
 
@@ -371,7 +523,7 @@ public class PowerGraph extends AbstractGraph<String> {
 	 * @return the lab
 	 */
 	public Lab getLab() {
-		return lab;
+		return labEngine.getLab();
 	}
 
 	@Override
@@ -386,8 +538,105 @@ public class PowerGraph extends AbstractGraph<String> {
 	 *          the new lab
 	 */
 	public void setLab(Lab lab) {
-		this.lab = lab;
-		setConnection(lab.getConnection());
+		preSetConnection();
+		if (baseline.isCalculating()) setBaseline();
+		baseline.reset();
+		labEngine.setLab(lab);
+
+		// the settings of the controls, including those not yet published, carry
+		// over to the new lab through its pipeline
+		syncControls();
+		publishNow();
+
+		windowFunctionSelected();
+		setClearBaselineEffect();
+		postSetConnection();
+	}
+
+	// sets the controls from the config, the band pass clamped to the lab's bins
+	private void syncControls() {
+		resizeBars(getLab().getNumBands() - 1);
+
+		fftType.setValue(config.getFftType());
+		filters.setValue(config.getPassFilter());
+		normalizeSignal.setSelected(config.isNormalizeSignal());
+		normalizeFft.setSelected(config.isNormalizeFft());
+		absoluteValues.setSelected(config.isAbsoluteValues());
+		highPassFactor.setValue(config.getHighPassFilterFactor());
+		lowPassFactor.setValue(config.getLowPassFilterFactor());
+
+		double max = bandPassSlider.getMax();
+		bandPassSlider.setHighValue(Math.min(config.getHighPassFrequency(), max));
+		bandPassSlider.setLowValue(Math.min(config.getLowPassFrequency(), bandPassSlider.getHighValue()));
+		config = config.withLowPassFrequency(bandPassSlider.getLowValue()).withHighPassFrequency(
+				bandPassSlider.getHighValue());
+
+		setAbsoluteEnabled();
+		setNormalizeFftEnabled();
+		setBandPassSliderEnabled();
+	}
+
+	/**
+	 * Gets the averager smoothing the displayed spectra. Its window, alpha and
+	 * decay may be set at any time; the mode is set from the display.
+	 *
+	 * @return the averager
+	 */
+	public SpectrumAverager getAverager() {
+		return getPipeline().getAverager();
+	}
+
+	/**
+	 * Gets the estimator of the per band baseline, which determines when a
+	 * baseline calculation completes and which is subtracted from, or against
+	 * which z-scores are computed of, the displayed spectra.
+	 * Its mode, count, duration and alpha may be set while no baseline is being
+	 * calculated.
+	 *
+	 * @return the baseline estimator
+	 */
+	public BaselineEstimator getBaselineEstimator() {
+		return baseline;
+	}
+
+	/**
+	 * Checks if the z-scores of the bands against the baseline are displayed
+	 * rather than their powers.
+	 *
+	 * @return true, if z-scores are displayed
+	 */
+	public boolean isDisplayZScores() {
+		return zScores.isSelected();
+	}
+
+	/**
+	 * Sets the display of z-scores. FX thread only.
+	 *
+	 * @param display
+	 *          true to display z-scores
+	 */
+	public void setDisplayZScores(boolean display) {
+		zScores.setSelected(display);
+		zScoresSelected();
+	}
+
+	/**
+	 * Gets the pipeline processing the samples for this graph, for access to
+	 * the hand off policy and queue depths.
+	 *
+	 * @return the pipeline
+	 */
+	public DspPipeline getPipeline() {
+		return labEngine.getPipeline();
+	}
+
+	/**
+	 * Gets the engine processing the samples for this graph.
+	 *
+	 * @return the lab engine
+	 */
+	public LabEngine getLabEngine() {
+		return labEngine;
 	}
 
 	private GridPane getPreFftPane() {
@@ -397,6 +646,8 @@ public class PowerGraph extends AbstractGraph<String> {
 		Label pf = new Label("Pass Filters");
 		Label lbl = new Label("Pass Filter Frequencies");
 		Label fft = new Label("FFT Type");
+		Label dm = new Label("Display Mode");
+		Label ov = new Label("Overlap %");
 
 		GridHelper gh = new GridHelper();
 
@@ -426,6 +677,18 @@ public class PowerGraph extends AbstractGraph<String> {
 		gh.incrX();
 		gridify(gh, normalizeSignal, HPos.LEFT, VPos.CENTER);
 
+		gh.newLine();
+		gridify(gh, dm, HPos.RIGHT, VPos.CENTER);
+
+		gh.incrX();
+		gridify(gh, displayModes, HPos.LEFT, VPos.CENTER);
+
+		gh.newLine();
+		gridify(gh, ov, HPos.RIGHT, VPos.CENTER);
+
+		gh.incrX();
+		gridify(gh, overlaps, HPos.LEFT, VPos.CENTER);
+
 		gh.width = 3;
 		gh.newLine();
 		gridify(gh, lbl, HPos.CENTER, VPos.CENTER);
@@ -442,7 +705,8 @@ public class PowerGraph extends AbstractGraph<String> {
 
 		gp.setAlignment(Pos.CENTER);
 		gp.getChildren().addAll(fft, fftType, displayGraph, wf, functions, pf, filters, absoluteValues, lbl, bp,
-				normalizeSignal, normalizeFft, highPassFactor, lowPassFactor);
+				normalizeSignal, normalizeFft, highPassFactor, lowPassFactor, dm, displayModes, ov,
+				overlaps);
 
 		return gp;
 	}
@@ -482,20 +746,10 @@ public class PowerGraph extends AbstractGraph<String> {
 			startStop.setSelected(false);
 			startStop();
 		}
+		if (baseline.isCalculating()) Platform.runLater(baselineCompleter);
 		calculateBaseline.setDisable(true);
 	}
 
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see com.github.mrstampy.esplab.gui.AbstractGraph#postSetConnection()
-	 */
-	protected void postSetConnection() {
-		if(getConnection() == null) return;
-		super.postSetConnection();
-		getLab().setConnection(getConnection());
-	}
-
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -503,25 +757,38 @@ public class PowerGraph extends AbstractGraph<String> {
 	 */
 	@Override
 	protected void graphAccept(double[][] samples) {
-		Observable.just(samples).subscribe(t1 -> getLab().process(t1));
+		// processed by the engine, rendered on request
 	}
 
 	private void reset() {
-		double[] zero = new double[getLab().getNumBands()];
-		Arrays.fill(zero, 0);
-		Platform.runLater(() -> paintPowers(zero));
+		int numBands = getLab().getNumBands();
+		if (zeros.length != numBands) zeros = new double[numBands];
+		Platform.runLater(resetter);
+	}
+
+	private void renderRequested() {
+		renderRequested = System.nanoTime();
+		Platform.runLater(renderer);
+	}
+
+	private void render() {
+		long start = System.nanoTime();
+		getMetrics().record(Stage.FX_LAG, start - renderRequested);
+
+		plot(labEngine.getPipeline().pollRender());
+		getMetrics().frame(start);
 	}
 
 	private void plot(double[] wmad) {
-		if (graphing.get()) Platform.runLater(() -> paintPowers(wmad));
+		if (wmad == null || !graphing.get()) return;
+
+		paintPowers(wmad);
 	}
 
 	private void paintPowers(double[] wmad) {
-		ObservableList<Data<String, Number>> data = series.getData();
-		for (int i = 0; i < wmad.length - 1; i++) {
-			Data<String, Number> point = data.get(i);
-			point.setYValue(wmad[i + 1]);
-		}
+		if (wmad.length - 1 != painter.getBins()) resizeBars(wmad.length - 1);
+
+		painter.paint(wmad);
 	}
 
 	/**
@@ -20,12 +20,10 @@ package com.github.mrstampy.esplab.gui;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleConsumer;
 
 import javafx.animation.AnimationTimer;
-import javafx.application.Platform;
 import javafx.collections.ObservableList;
 import javafx.geometry.Pos;
 import javafx.geometry.Side;
@@ -37,7 +35,11 @@ import javafx.scene.layout.VBox;
 
 import org.controlsfx.control.MasterDetailPane;
 
-import rx.Observable;
+import com.github.mrstampy.esplab.buffer.DoubleRingBuffer;
+import com.github.mrstampy.esplab.buffer.OverflowPolicy;
+import com.github.mrstampy.esplab.dsp.Decimator;
+import com.github.mrstampy.esplab.dsp.MinMaxDecimator;
+import com.github.mrstampy.esplab.metrics.Stage;
 
 // TODO: Auto-generated Javadoc
 /**
@@ -45,12 +47,20 @@ import rx.Observable;
  */
 public class RawDataGraph extends AbstractGraph<Number> {
 	private static final int MAX_X = 100;
+	private static final int BUFFER_SIZE = 16384;
 
 	private AnimationTimer timer;
 
-	private AtomicInteger counter = new AtomicInteger();
 	private AtomicInteger xPos = new AtomicInteger();
-	private ArrayBlockingQueue<Double> queue = new ArrayBlockingQueue<>(10000);
+	private DoubleRingBuffer queue = new DoubleRingBuffer(BUFFER_SIZE, OverflowPolicy.OVERWRITE_OLDEST);
+
+	private double[] drained = new double[BUFFER_SIZE];
+	private DoubleConsumer sink = v -> queue.add(v);
+	private volatile long pendingSince;
+
+	private volatile Decimator decimator = new MinMaxDecimator(8);
+	private volatile boolean decimatorReset;
+	private List<Data<Number, Number>> batch = new ArrayList<>(MAX_X);
 
 	/**
 	 * Instantiates a new raw data graph.
@@ -58,6 +68,7 @@ public class RawDataGraph extends AbstractGraph<Number> {
 	public RawDataGraph() {
 		super();
 		initChart();
+		getMetrics().addSamplesDroppedSource(() -> queue.getDroppedCount());
 	}
 
 	/* (non-Javadoc)
@@ -69,7 +80,7 @@ public class RawDataGraph extends AbstractGraph<Number> {
 		pane.setDividerPosition(0.8);
 
 		pane.setMasterNode(chart);
-		VBox box = new VBox(10, startStop);
+		VBox box = new VBox(10, startStop, metricsOverlay);
 		box.setAlignment(Pos.CENTER);
 		pane.setDetailNode(box);
 
@@ -82,21 +93,24 @@ public class RawDataGraph extends AbstractGraph<Number> {
 	protected void graphAccept(double[][] t) {
 		if (!running.get() || t.length == 0) return;
 
-		if (counter.get() % 4 == 0) {
-			for (int i = 0; i < t[0].length; i++) {
-				queue.add(t[0][i]);
-			}
+		// reset on the thread driving the decimator, which is single threaded
+		Decimator d = decimator;
+		if (decimatorReset) {
+			decimatorReset = false;
+			d.reset();
 		}
 
-		counter.getAndIncrement();
+		d.decimate(t[0], sink);
+		if (pendingSince == 0) pendingSince = System.nanoTime();
 	}
 
 	/* (non-Javadoc)
 	 * @see com.github.mrstampy.esplab.gui.AbstractGraph#start()
 	 */
 	protected void start() {
-		counter.set(0);
+		decimatorReset = true;
 		queue.clear();
+		queue.resetDroppedCount();
 		series.getData().clear();
 		xPos.set(0);
 		timer.start();
@@ -134,24 +148,43 @@ public class RawDataGraph extends AbstractGraph<Number> {
 
 			@Override
 			public void handle(long arg0) {
-				List<Double> list = new ArrayList<>();
-				queue.drainTo(list);
+				long since = pendingSince;
+				int num = queue.drainTo(drained);
+				if (num == 0) return;
+
+				pendingSince = 0;
+				long start = System.nanoTime();
+				if (since != 0) getMetrics().record(Stage.FX_LAG, start - since);
 
-				list.forEach(t -> updateChartImpl(t));
+				updateChart(drained, num);
+				getMetrics().frame(start);
 			}
 		};
 	}
 
-	private void updateChartImpl(double val) {
-		Observable.timer(100, TimeUnit.MICROSECONDS).subscribe(t -> Platform.runLater(() -> updateChart(val)));
-	}
-
-	private void updateChart(double val) {
-		ObservableList<Data<Number, Number>> data = series.getData();
+	/**
+	 * Applies all samples received since the last pulse in a single series
+	 * update. Already running on the FX thread courtesy of the
+	 * {@link AnimationTimer}; samples which would scroll off the chart in this
+	 * frame are counted but never added.
+	 */
+	private void updateChart(double[] vals, int size) {
+		int skip = Math.max(0, size - MAX_X);
+		int first = xPos.getAndAdd(size) + skip;
 
-		data.add(new Data<Number, Number>(xPos.getAndIncrement(), val));
+		for (int i = skip; i < size; i++) {
+			batch.add(new Data<Number, Number>(first + i - skip, vals[i]));
+		}
 
-		if (data.size() > MAX_X) data.remove(0, data.size() - MAX_X);
+		ObservableList<Data<Number, Number>> data = series.getData();
+		if (batch.size() >= MAX_X) {
+			data.setAll(batch);
+		} else {
+			int overflow = data.size() + batch.size() - MAX_X;
+			if (overflow > 0) data.remove(0, overflow);
+			data.addAll(batch);
+		}
+		batch.clear();
 
 		int x = xPos.get();
 
@@ -160,6 +193,48 @@ public class RawDataGraph extends AbstractGraph<Number> {
 		na.setUpperBound(x);
 	}
 
+	/**
+	 * Gets the number of samples discarded since the last {@link #start()}
+	 * because the display could not keep up with the connection.
+	 *
+	 * @return the dropped samples
+	 */
+	public long getDroppedSamples() {
+		return queue.getDroppedCount();
+	}
+
+	/**
+	 * Gets the decimator.
+	 *
+	 * @return the decimator
+	 */
+	public Decimator getDecimator() {
+		return decimator;
+	}
+
+	/**
+	 * Sets the decimator applied to samples before they are queued for display.
+	 * Defaults to a {@link MinMaxDecimator} with a factor of 8.
+	 *
+	 * @param decimator
+	 *          the new decimator
+	 */
+	public void setDecimator(Decimator decimator) {
+		if (decimator == null) throw new IllegalArgumentException("Decimator must be specified");
+		decimator.reset();
+		this.decimator = decimator;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esplab.gui.AbstractGraph#isBehind()
+	 */
+	@Override
+	protected boolean isBehind() {
+		return queue.size() > queue.getCapacity() / 2;
+	}
+
 	@Override
 	protected int getChannel() {
 		return 1;
@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.gui;
+
+import javafx.animation.AnimationTimer;
+import javafx.geometry.Pos;
+import javafx.geometry.Side;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+import javafx.scene.layout.Pane;
+import javafx.scene.layout.Region;
+import javafx.scene.layout.VBox;
+import javafx.scene.paint.Color;
+
+import org.controlsfx.control.MasterDetailPane;
+
+import com.github.mrstampy.esp.dsp.lab.Lab;
+import com.github.mrstampy.esp.dsp.lab.SignalProcessedListener;
+import com.github.mrstampy.esplab.buffer.SpectrumRing;
+import com.github.mrstampy.esplab.engine.LabEngine;
+import com.github.mrstampy.esplab.metrics.Stage;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class SpectrogramGraph displays the history of a lab's band powers as a
+ * scrolling waterfall, time running left to right and the lowest band at the
+ * bottom. Every spectrum from the lab's {@link SignalProcessedListener} is
+ * queued and written as a single column of a fixed size {@link WritableImage};
+ * rather than shifting the image, the column written wraps around and the
+ * image is drawn in two parts from the oldest column. Memory is constant and
+ * each spectrum costs one column of pixels regardless of the length of the
+ * history.<br>
+ * <br>
+ * Colours are scaled to a slowly decaying maximum of the powers seen; as with
+ * the {@link PowerGraph} the DC band is not displayed.
+ */
+public class SpectrogramGraph extends AbstractGraph<String> {
+
+	/** The default number of spectra displayed. */
+	public static final int DEFAULT_HISTORY = 600;
+
+	private static final int PENDING = 64;
+	private static final double DECAY = 0.995;
+	private static final int[] PALETTE = new int[256];
+
+	static {
+		for (int i = 0; i < PALETTE.length; i++) {
+			double f = i / (double) (PALETTE.length - 1);
+			Color c = Color.hsb(240 * (1 - f), 1, Math.min(1, f * 3));
+			PALETTE[i] = argb(c);
+		}
+	}
+
+	private LabEngine labEngine;
+	private SpectrumRing pending = new SpectrumRing(PENDING, 0);
+	private SignalProcessedListener listener = t -> spectrumProcessed(t);
+	private volatile long pendingSince;
+
+	private AnimationTimer timer;
+
+	private final int history;
+	private WritableImage image;
+	private int column;
+	private double scaleMax;
+	private volatile boolean logScale;
+
+	private Pane canvasPane = new Pane();
+	private Canvas canvas = new Canvas();
+	private boolean dirty;
+
+	/**
+	 * Instantiates a new spectrogram graph showing {@link #DEFAULT_HISTORY}
+	 * spectra.
+	 *
+	 * @param lab
+	 *          the lab
+	 */
+	public SpectrogramGraph(Lab lab) {
+		this(lab, DEFAULT_HISTORY);
+	}
+
+	/**
+	 * Instantiates a new spectrogram graph.
+	 *
+	 * @param lab
+	 *          the lab
+	 * @param history
+	 *          the number of spectra displayed
+	 */
+	public SpectrogramGraph(Lab lab, int history) {
+		this(new LabEngine(lab), history);
+	}
+
+	private SpectrogramGraph(LabEngine labEngine, int history) {
+		super(labEngine);
+		if (history <= 0) throw new IllegalArgumentException("History must be > 0: " + history);
+
+		this.labEngine = labEngine;
+		this.history = history;
+
+		labEngine.getLab().addSignalProcessedListener(listener);
+
+		initCanvas();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.github.mrstampy.esplab.gui.AbstractGraph#getLayout()
+	 */
+	public Region getLayout() {
+		MasterDetailPane pane = new MasterDetailPane(Side.BOTTOM);
+		pane.setMinWidth(1000);
+		pane.setDividerPosition(0.8);
+
+		pane.setMasterNode(canvasPane);
+		VBox box = new VBox(10, startStop, metricsOverlay);
+		box.setAlignment(Pos.CENTER);
+		pane.setDetailNode(box);
+
+		return pane;
+	}
+
+	/**
+	 * Gets the lab.
+	 *
+	 * @return the lab
+	 */
+	public Lab getLab() {
+		return labEngine.getLab();
+	}
+
+	/**
+	 * Gets the engine processing the samples for this graph.
+	 *
+	 * @return the lab engine
+	 */
+	public LabEngine getLabEngine() {
+		return labEngine;
+	}
+
+	/**
+	 * Checks if colours are scaled logarithmically.
+	 *
+	 * @return true, if log scale
+	 */
+	public boolean isLogScale() {
+		return logScale;
+	}
+
+	/**
+	 * If true colours are scaled logarithmically, bringing out weaker bands.
+	 * Applies to spectra displayed from now on.
+	 *
+	 * @param logScale
+	 *          the new log scale
+	 */
+	public void setLogScale(boolean logScale) {
+		this.logScale = logScale;
+	}
+
+	/**
+	 * Gets the number of spectra dropped because the display could not keep
+	 * up with the lab.
+	 *
+	 * @return the dropped spectra
+	 */
+	public long getDroppedSpectra() {
+		return pending.getDroppedCount();
+	}
+
+	/**
+	 * Gets the number of spectra displayed.
+	 *
+	 * @return the history
+	 */
+	public int getHistory() {
+		return history;
+	}
+
+	@Override
+	protected int getChannel() {
+		return getLab().getChannel();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.github.mrstampy.esplab.gui.AbstractGraph#graphAccept(double[][])
+	 */
+	@Override
+	protected void graphAccept(double[][] samples) {
+		// processed by the engine, spectra received from the lab
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.github.mrstampy.esplab.gui.AbstractGraph#start()
+	 */
+	@Override
+	protected void start() {
+		timer.start();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.github.mrstampy.esplab.gui.AbstractGraph#stop()
+	 */
+	@Override
+	protected void stop() {
+		timer.stop();
+	}
+
+	private void spectrumProcessed(double[] spectrum) {
+		if (!running.get()) return;
+
+		pending.add(spectrum);
+		if (pendingSince == 0) pendingSince = System.nanoTime();
+	}
+
+	private void initCanvas() {
+		canvasPane.setMinSize(400, 200);
+		canvasPane.setPrefSize(1000, 400);
+		canvasPane.getChildren().add(canvas);
+
+		canvas.widthProperty().bind(canvasPane.widthProperty());
+		canvas.heightProperty().bind(canvasPane.heightProperty());
+		canvas.widthProperty().addListener((o, old, newVal) -> dirty = true);
+		canvas.heightProperty().addListener((o, old, newVal) -> dirty = true);
+
+		timer = new AnimationTimer() {
+
+			@Override
+			public void handle(long arg0) {
+				long start = System.nanoTime();
+				drain(start);
+				if (!dirty) return;
+
+				draw();
+				getMetrics().frame(start);
+			}
+		};
+	}
+
+	private void drain(long start) {
+		long since = pendingSince;
+
+		double[] spectrum = pending.peek();
+		if (spectrum == null) return;
+
+		pendingSince = 0;
+		if (since != 0) getMetrics().record(Stage.FX_LAG, start - since);
+
+		while (spectrum != null) {
+			writeColumn(spectrum);
+			pending.remove();
+			spectrum = pending.peek();
+		}
+
+		dirty = true;
+	}
+
+	private void writeColumn(double[] spectrum) {
+		int bands = spectrum.length - 1;
+		if (bands <= 0) return;
+
+		if (image == null || image.getHeight() != bands) {
+			image = new WritableImage(history, bands);
+			column = 0;
+			scaleMax = 0;
+		}
+
+		double max = 0;
+		for (int i = 1; i < spectrum.length; i++) {
+			if (spectrum[i] > max) max = spectrum[i];
+		}
+		scaleMax = Math.max(max, scaleMax * DECAY);
+
+		boolean log = logScale;
+		double scale = scaleMax == 0 ? 0 : 1 / (log ? Math.log1p(scaleMax) : scaleMax);
+
+		PixelWriter pw = image.getPixelWriter();
+		for (int i = 1; i < spectrum.length; i++) {
+			double val = Math.max(0, spectrum[i]);
+			double f = (log ? Math.log1p(val) : val) * scale;
+
+			int idx = (int) (Math.min(1, f) * (PALETTE.length - 1));
+			pw.setArgb(column, bands - i, PALETTE[idx]);
+		}
+
+		column = (column + 1) % history;
+	}
+
+	private void draw() {
+		dirty = false;
+
+		double width = canvas.getWidth();
+		double height = canvas.getHeight();
+
+		GraphicsContext gc = canvas.getGraphicsContext2D();
+		gc.setFill(Color.BLACK);
+		gc.fillRect(0, 0, width, height);
+
+		if (image == null) return;
+
+		// the oldest column is the next to be written
+		double colWidth = width / history;
+		double imageHeight = image.getHeight();
+
+		int older = history - column;
+		gc.drawImage(image, column, 0, older, imageHeight, 0, 0, older * colWidth, height);
+		if (column > 0) gc.drawImage(image, 0, 0, column, imageHeight, older * colWidth, 0, column * colWidth, height);
+	}
+
+	private static int argb(Color c) {
+		return 0xff000000 | ((int) Math.round(c.getRed() * 255) << 16) | ((int) Math.round(c.getGreen() * 255) << 8)
+				| (int) Math.round(c.getBlue() * 255);
+	}
+}
@@ -0,0 +1,361 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.gui;
+
+import java.util.function.DoubleConsumer;
+
+import javafx.animation.AnimationTimer;
+import javafx.geometry.Pos;
+import javafx.geometry.Side;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.layout.Pane;
+import javafx.scene.layout.Region;
+import javafx.scene.layout.VBox;
+import javafx.scene.paint.Color;
+
+import org.controlsfx.control.MasterDetailPane;
+
+import com.github.mrstampy.esplab.buffer.DoubleRingBuffer;
+import com.github.mrstampy.esplab.buffer.OverflowPolicy;
+import com.github.mrstampy.esplab.dsp.Decimator;
+import com.github.mrstampy.esplab.dsp.MinMaxDecimator;
+import com.github.mrstampy.esplab.metrics.Stage;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class WaveformGraph draws the raw signal for a channel directly onto a
+ * {@link Canvas}. Unlike the {@link RawDataGraph} there is no scene graph node
+ * per point; the history is kept in a primitive array and each frame is drawn
+ * as a single polyline of per pixel column minimums and maximums. The column
+ * minimums and maximums are kept up to date as samples arrive, each column
+ * covering a fixed run of samples, so the cost of a frame depends on the width
+ * of the canvas rather than the length of the history; the history itself is
+ * only rescanned when the canvas is resized.
+ */
+public class WaveformGraph extends AbstractGraph<Number> {
+
+	/** The default number of samples displayed. */
+	public static final int DEFAULT_HISTORY = 32768;
+
+	private AnimationTimer timer;
+
+	private int channel;
+
+	private DoubleRingBuffer queue;
+	private double[] drained;
+	private DoubleConsumer sink = v -> queue.add(v);
+	private volatile long pendingSince;
+
+	private volatile Decimator decimator = new MinMaxDecimator(1);
+	private volatile boolean decimatorReset;
+
+	private double[] history;
+	private int historyPos;
+	private int historyCount;
+
+	private long appended;
+	private int perColumn = 1;
+	private int columns;
+	private long lastColumn = -1;
+
+	private Pane canvasPane = new Pane();
+	private Canvas canvas = new Canvas();
+
+	private double[] xPoints = new double[0];
+	private double[] yPoints = new double[0];
+	private double[] colMin = new double[0];
+	private double[] colMax = new double[0];
+
+	private boolean dirty;
+
+	/**
+	 * Instantiates a new waveform graph for channel 1.
+	 */
+	public WaveformGraph() {
+		this(1, DEFAULT_HISTORY);
+	}
+
+	/**
+	 * Instantiates a new waveform graph.
+	 *
+	 * @param channel
+	 *          the channel
+	 * @param historySize
+	 *          the number of samples displayed
+	 */
+	public WaveformGraph(int channel, int historySize) {
+		super();
+		this.channel = channel;
+
+		history = new double[historySize];
+		queue = new DoubleRingBuffer(historySize, OverflowPolicy.OVERWRITE_OLDEST);
+		drained = new double[queue.getCapacity()];
+
+		initCanvas();
+		getMetrics().addSamplesDroppedSource(() -> queue.getDroppedCount());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.github.mrstampy.esplab.gui.AbstractGraph#getLayout()
+	 */
+	public Region getLayout() {
+		MasterDetailPane pane = new MasterDetailPane(Side.BOTTOM);
+		pane.setMinWidth(1000);
+		pane.setDividerPosition(0.8);
+
+		pane.setMasterNode(canvasPane);
+		VBox box = new VBox(10, startStop, metricsOverlay);
+		box.setAlignment(Pos.CENTER);
+		pane.setDetailNode(box);
+
+		return pane;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.github.mrstampy.esplab.gui.AbstractGraph#graphAccept(double[][])
+	 */
+	protected void graphAccept(double[][] t) {
+		if (!running.get() || t.length == 0) return;
+
+		// reset on the thread driving the decimator, which is single threaded
+		Decimator d = decimator;
+		if (decimatorReset) {
+			decimatorReset = false;
+			d.reset();
+		}
+
+		d.decimate(t[0], sink);
+		if (pendingSince == 0) pendingSince = System.nanoTime();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.github.mrstampy.esplab.gui.AbstractGraph#start()
+	 */
+	protected void start() {
+		decimatorReset = true;
+		queue.clear();
+		queue.resetDroppedCount();
+		historyPos = 0;
+		historyCount = 0;
+		appended = 0;
+		lastColumn = -1;
+		dirty = true;
+		timer.start();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.github.mrstampy.esplab.gui.AbstractGraph#stop()
+	 */
+	protected void stop() {
+		timer.stop();
+	}
+
+	/**
+	 * Gets the number of samples discarded since the last {@link #start()}
+	 * because the display could not keep up with the connection.
+	 *
+	 * @return the dropped samples
+	 */
+	public long getDroppedSamples() {
+		return queue.getDroppedCount();
+	}
+
+	/**
+	 * Gets the decimator.
+	 *
+	 * @return the decimator
+	 */
+	public Decimator getDecimator() {
+		return decimator;
+	}
+
+	/**
+	 * Sets the decimator applied to samples before they are queued for display.
+	 * Defaults to a {@link MinMaxDecimator} with a factor of 1, ie. every sample
+	 * is displayed. Increasing the factor widens the time window shown for the
+	 * same history size.
+	 *
+	 * @param decimator
+	 *          the new decimator
+	 */
+	public void setDecimator(Decimator decimator) {
+		if (decimator == null) throw new IllegalArgumentException("Decimator must be specified");
+		decimator.reset();
+		this.decimator = decimator;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esplab.gui.AbstractGraph#isBehind()
+	 */
+	@Override
+	protected boolean isBehind() {
+		return queue.size() > queue.getCapacity() / 2;
+	}
+
+	@Override
+	protected int getChannel() {
+		return channel;
+	}
+
+	private void initCanvas() {
+		canvasPane.setMinSize(400, 200);
+		canvasPane.setPrefSize(1000, 400);
+		canvasPane.getChildren().add(canvas);
+
+		canvas.widthProperty().bind(canvasPane.widthProperty());
+		canvas.heightProperty().bind(canvasPane.heightProperty());
+		canvas.widthProperty().addListener((o, old, newVal) -> dirty = true);
+		canvas.heightProperty().addListener((o, old, newVal) -> dirty = true);
+
+		timer = new AnimationTimer() {
+
+			@Override
+			public void handle(long arg0) {
+				long start = System.nanoTime();
+				drain(start);
+				if (!dirty) return;
+
+				draw();
+				getMetrics().frame(start);
+			}
+		};
+	}
+
+	private void drain(long start) {
+		long since = pendingSince;
+		int num = queue.drainTo(drained);
+		if (num == 0) return;
+
+		pendingSince = 0;
+		if (since != 0) getMetrics().record(Stage.FX_LAG, start - since);
+
+		int len = history.length;
+		int from = Math.max(0, num - len);
+		appended += from;
+		for (int i = from; i < num; i++) {
+			double val = drained[i];
+			history[historyPos] = val;
+			historyPos = (historyPos + 1) % len;
+			column(appended++, val);
+		}
+
+		historyCount = Math.min(len, historyCount + num);
+		dirty = true;
+	}
+
+	private void draw() {
+		dirty = false;
+
+		int width = (int) canvas.getWidth();
+		double height = canvas.getHeight();
+
+		GraphicsContext gc = canvas.getGraphicsContext2D();
+		gc.setFill(Color.WHITE);
+		gc.fillRect(0, 0, canvas.getWidth(), height);
+
+		if (width <= 0 || historyCount == 0) return;
+
+		if (width != columns) layout(width);
+
+		// the most recent columns, at most one per pixel
+		long first = Math.max((appended - historyCount) / perColumn, lastColumn - columns + 1);
+		int num = (int) (lastColumn - first + 1);
+
+		double min = Double.MAX_VALUE;
+		double max = -Double.MAX_VALUE;
+		for (int i = 0; i < num; i++) {
+			int slot = slot(first + i);
+			if (colMin[slot] < min) min = colMin[slot];
+			if (colMax[slot] > max) max = colMax[slot];
+		}
+
+		double range = max - min;
+		double scale = range == 0 ? 0 : (height - 2) / range;
+		double mid = height / 2;
+
+		int points = 0;
+		for (int i = 0; i < num; i++) {
+			int slot = slot(first + i);
+
+			xPoints[points] = i;
+			yPoints[points++] = range == 0 ? mid : height - 1 - (colMin[slot] - min) * scale;
+			xPoints[points] = i;
+			yPoints[points++] = range == 0 ? mid : height - 1 - (colMax[slot] - min) * scale;
+		}
+
+		gc.setStroke(Color.STEELBLUE);
+		gc.setLineWidth(1);
+		gc.strokePolyline(xPoints, yPoints, points);
+	}
+
+	// each column covers a fixed run of samples counted from the start, so new
+	// samples only ever touch the last column
+	private void column(long index, double val) {
+		if (columns == 0) return;
+
+		long col = index / perColumn;
+		int slot = slot(col);
+		if (col != lastColumn) {
+			lastColumn = col;
+			colMin[slot] = val;
+			colMax[slot] = val;
+		} else {
+			if (val < colMin[slot]) colMin[slot] = val;
+			if (val > colMax[slot]) colMax[slot] = val;
+		}
+	}
+
+	private int slot(long col) {
+		return (int) (col % columns);
+	}
+
+	// resized; rebuild the columns from the history
+	private void layout(int width) {
+		ensureCapacity(width);
+		columns = width;
+		perColumn = Math.max(1, (history.length + width - 1) / width);
+		lastColumn = -1;
+
+		long index = appended - historyCount;
+		int start = historyPos - historyCount;
+		for (int i = 0; i < historyCount; i++) {
+			column(index + i, history[Math.floorMod(start + i, history.length)]);
+		}
+	}
+
+	private void ensureCapacity(int width) {
+		if (colMin.length >= width) return;
+
+		colMin = new double[width];
+		colMax = new double[width];
+		xPoints = new double[width * 2];
+		yPoints = new double[width * 2];
+	}
+}
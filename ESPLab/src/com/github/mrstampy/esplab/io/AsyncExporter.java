@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.github.mrstampy.esplab.acquisition.SampleBlock;
+import com.github.mrstampy.esplab.acquisition.SnapshotAligner;
+import com.github.mrstampy.esplab.io.RecordQueue.Record;
+import com.github.mrstampy.esplab.io.RecordQueue.RecordWriter;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class AsyncExporter exports samples and spectra as they are acquired
+ * and processed. Records are copied into the pooled records of a bounded
+ * {@link RecordQueue} which is drained to an {@link ExportWriter} by a writer
+ * thread of its own, so the acquisition and DSP threads never wait on the
+ * file; should the writer fall behind records are dropped and counted rather
+ * than blocking acquisition. The writer is flushed every
+ * {@link #FLUSH_MILLIS}, so that no more than that is lost should the
+ * application die. For a lossless export record the session with a
+ * {@link SessionRecorder} and export it afterwards with the
+ * {@link SessionExporter}.
+ */
+public class AsyncExporter implements Closeable {
+
+	/** The default capacity of the queue, in records. */
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	/** The millis between flushes of the writer. */
+	public static final long FLUSH_MILLIS = 1000;
+
+	// queued but never written, aligned into samples by the writer thread
+	private static final int SNAPSHOT = -1;
+
+	private final ExportWriter writer;
+	private final RecordQueue queue;
+	private final long startNanos;
+
+	private Map<Integer, SnapshotAligner> aligners = new HashMap<>();
+
+	/**
+	 * Instantiates a new async exporter with a queue of
+	 * {@link #DEFAULT_CAPACITY}.
+	 *
+	 * @param writer
+	 *          the writer, closed with this exporter
+	 */
+	public AsyncExporter(ExportWriter writer) {
+		this(writer, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Instantiates a new async exporter.
+	 *
+	 * @param writer
+	 *          the writer, closed with this exporter
+	 * @param capacity
+	 *          the capacity of the queue, in records
+	 */
+	public AsyncExporter(ExportWriter writer, int capacity) {
+		if (writer == null) throw new IllegalArgumentException("Writer must be specified");
+
+		this.writer = writer;
+		startNanos = System.nanoTime();
+		queue = new RecordQueue("ESPLab Export", capacity, FLUSH_MILLIS, new RecordWriter() {
+
+			@Override
+			public void write(Record record) throws IOException {
+				AsyncExporter.this.write(record);
+			}
+
+			@Override
+			public void idle() throws IOException {
+				AsyncExporter.this.writer.flush();
+			}
+		});
+	}
+
+	/**
+	 * Exports a copy of a block of samples, each of which has not been exported
+	 * before. Never blocks.
+	 *
+	 * @param channel
+	 *          the channel, or -1 for all channels
+	 * @param samples
+	 *          the samples
+	 */
+	public void exportSamples(int channel, double[][] samples) {
+		if (!queue.isOpen()) return;
+
+		queue.offer(SessionFormat.SAMPLES, channel, nanos(), samples);
+	}
+
+	/**
+	 * Exports the samples of a polled snapshot not exported with the previous
+	 * snapshot of the channel, as successive snapshots overlap. The snapshot is
+	 * copied and queued as is, and aligned with the previous on the writer
+	 * thread. Never blocks.
+	 *
+	 * @param channel
+	 *          the channel, or -1 for all channels
+	 * @param snapshot
+	 *          the snapshot
+	 * @see SnapshotAligner
+	 */
+	public void exportSnapshot(int channel, double[][] snapshot) {
+		if (!queue.isOpen()) return;
+
+		queue.offer(SNAPSHOT, channel, nanos(), snapshot);
+	}
+
+	/**
+	 * Exports a copy of a spectrum. Never blocks.
+	 *
+	 * @param channel
+	 *          the channel
+	 * @param spectrum
+	 *          the spectrum
+	 */
+	public void exportSpectrum(int channel, double[] spectrum) {
+		if (!queue.isOpen()) return;
+
+		queue.offer(SessionFormat.SPECTRUM, channel, nanos(), spectrum);
+	}
+
+	private long nanos() {
+		return System.nanoTime() - startNanos;
+	}
+
+	private static double[][] copy(double[][] rows) {
+		double[][] copy = new double[rows.length][];
+		for (int i = 0; i < rows.length; i++) {
+			copy[i] = rows[i].clone();
+		}
+
+		return copy;
+	}
+
+	private void write(Record record) throws IOException {
+		switch (record.type) {
+		case SNAPSHOT:
+			writeSnapshot(record);
+			break;
+		case SessionFormat.SAMPLES:
+			writer.writeSamples(record.channel, record.nanos, record.values);
+			break;
+		default:
+			writer.writeSpectrum(record.channel, record.nanos, record.values[0]);
+			break;
+		}
+	}
+
+	private void writeSnapshot(Record record) throws IOException {
+		SnapshotAligner aligner = aligners.computeIfAbsent(record.channel, c -> new SnapshotAligner());
+
+		// the aligner keeps the snapshot to align the next, the record is reused
+		SampleBlock block = aligner.align(copy(record.values));
+		if (block != null) writer.writeSamples(record.channel, record.nanos, block.getSamples());
+	}
+
+	/**
+	 * Gets the number of records dropped because the writer could not keep up.
+	 *
+	 * @return the dropped count
+	 */
+	public long getDroppedCount() {
+		return queue.getDroppedCount();
+	}
+
+	/**
+	 * Gets the number of records queued but not yet written.
+	 *
+	 * @return the queue depth
+	 */
+	public int getQueueDepth() {
+		return queue.getDepth();
+	}
+
+	/**
+	 * Gets the writer.
+	 *
+	 * @return the writer
+	 */
+	public ExportWriter getWriter() {
+		return writer;
+	}
+
+	/**
+	 * Stops accepting records, waits for those queued to be written and closes
+	 * the writer.
+	 *
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			queue.close();
+		} finally {
+			writer.close();
+		}
+	}
+}
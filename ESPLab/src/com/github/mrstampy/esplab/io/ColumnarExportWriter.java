@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.io;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class ColumnarExportWriter writes a compact little endian binary file
+ * of column chunks. Each stream of records, ie. each type, channel and width,
+ * is staged in reusable arrays of its own and written out as a chunk once
+ * {@link #DEFAULT_CHUNK_ROWS} have accumulated or the writer is flushed, so
+ * that interleaved streams, such as the blocks and spectra of a graph or the
+ * channels of a multi-channel graph, are each written in full chunks:
+ * 
+ * <pre>
+ * file header:  int magic, int version
+ * chunk header: int type, int channel, int rows, int width
+ * columns:      long nanos[rows], then for each column c of width: float value[rows]
+ * </pre>
+ * 
+ * The type is {@link SessionFormat#SAMPLES} or {@link SessionFormat#SPECTRUM}
+ * and the width is the number of channels of a sample instant or bands of a
+ * spectrum. Chunks of different streams are interleaved in the file, those of
+ * one stream in order. Values are stored as floats, halving the size of the
+ * session recording; each column is contiguous, so a single channel or band
+ * can be read without touching the others.
+ */
+public class ColumnarExportWriter extends ExportWriter {
+
+	/** The magic number, 'ESPC'. */
+	public static final int MAGIC = 0x45535043;
+
+	/** The format version. */
+	public static final int VERSION = 1;
+
+	/** The size of a chunk header in bytes. */
+	public static final int CHUNK_HEADER_SIZE = 16;
+
+	/** The default maximum number of rows in a chunk. */
+	public static final int DEFAULT_CHUNK_ROWS = 1024;
+
+	private final int chunkRows;
+
+	private List<Stream> streams = new ArrayList<>();
+
+	/**
+	 * Instantiates a new columnar export writer with chunks of
+	 * {@link #DEFAULT_CHUNK_ROWS}.
+	 *
+	 * @param path
+	 *          the file, created or replaced
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	public ColumnarExportWriter(Path path) throws IOException {
+		this(path, DEFAULT_CHUNK_ROWS);
+	}
+
+	/**
+	 * Instantiates a new columnar export writer.
+	 *
+	 * @param path
+	 *          the file, created or replaced
+	 * @param chunkRows
+	 *          the maximum number of rows in a chunk
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	public ColumnarExportWriter(Path path, int chunkRows) throws IOException {
+		super(path, DEFAULT_BUFFER_SIZE);
+		if (chunkRows < 1) throw new IllegalArgumentException("Chunk rows must be > 0: " + chunkRows);
+
+		this.chunkRows = chunkRows;
+
+		buffer.order(SessionFormat.ORDER);
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esplab.io.ExportWriter#writeSamples(int, long,
+	 * double[][])
+	 */
+	@Override
+	public void writeSamples(int chan, long nanos, double[][] samples) throws IOException {
+		if (samples.length == 0) return;
+
+		Stream stream = getStream(SessionFormat.SAMPLES, chan, samples.length);
+
+		int length = samples[0].length;
+		long[] instants = sampleNanos(chan, nanos, length);
+		for (int i = 0; i < length; i++) {
+			if (stream.rows == chunkRows) writeChunk(stream);
+
+			int offset = stream.rows * stream.width;
+			for (int c = 0; c < stream.width; c++) {
+				stream.values[offset + c] = i < samples[c].length ? (float) samples[c][i] : Float.NaN;
+			}
+			stream.nanos[stream.rows++] = instants[i];
+			recordWritten();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esplab.io.ExportWriter#writeSpectrum(int, long,
+	 * double[])
+	 */
+	@Override
+	public void writeSpectrum(int chan, long nanos, double[] spectrum) throws IOException {
+		Stream stream = getStream(SessionFormat.SPECTRUM, chan, spectrum.length);
+		if (stream.rows == chunkRows) writeChunk(stream);
+
+		int offset = stream.rows * stream.width;
+		for (int c = 0; c < stream.width; c++) {
+			stream.values[offset + c] = (float) spectrum[c];
+		}
+		stream.nanos[stream.rows++] = nanos;
+		recordWritten();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esplab.io.ExportWriter#flush()
+	 */
+	@Override
+	public void flush() throws IOException {
+		for (Stream stream : streams) {
+			writeChunk(stream);
+		}
+		super.flush();
+	}
+
+	// streams are few, so are scanned rather than hashed
+	private Stream getStream(int type, int chan, int width) {
+		for (int i = 0; i < streams.size(); i++) {
+			Stream stream = streams.get(i);
+			if (stream.type == type && stream.chan == chan && stream.width == width) return stream;
+		}
+
+		Stream stream = new Stream(type, chan, width, chunkRows);
+		streams.add(stream);
+
+		return stream;
+	}
+
+	// staged row major, written column major
+	private void writeChunk(Stream stream) throws IOException {
+		int rows = stream.rows;
+		if (rows == 0) return;
+
+		int width = stream.width;
+
+		ensure(CHUNK_HEADER_SIZE);
+		buffer.putInt(stream.type);
+		buffer.putInt(stream.chan);
+		buffer.putInt(rows);
+		buffer.putInt(width);
+
+		for (int r = 0; r < rows; r++) {
+			ensure(8);
+			buffer.putLong(stream.nanos[r]);
+		}
+
+		for (int c = 0; c < width; c++) {
+			for (int r = 0; r < rows; r++) {
+				ensure(4);
+				buffer.putFloat(stream.values[r * width + c]);
+			}
+		}
+
+		stream.rows = 0;
+	}
+
+	private static class Stream {
+		final int type;
+		final int chan;
+		final int width;
+		final long[] nanos;
+		final float[] values;
+		int rows;
+
+		Stream(int type, int chan, int width, int chunkRows) {
+			this.type = type;
+			this.chan = chan;
+			this.width = width;
+			nanos = new long[chunkRows];
+			values = new float[chunkRows * width];
+		}
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.io;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class CsvExportWriter writes comma separated text, one line per
+ * record:
+ * 
+ * <pre>
+ * type,channel,nanos,value,value...
+ * </pre>
+ * 
+ * where the type is samples or spectrum and the values are the channels of a
+ * sample instant or the bands of a spectrum. Values are formatted into a
+ * reusable builder and encoded straight into the writer's buffer.
+ */
+public class CsvExportWriter extends ExportWriter {
+
+	/** The header line. */
+	public static final String HEADER = "type,channel,nanos,values";
+
+	private static final String SAMPLES = "samples";
+	private static final String SPECTRUM = "spectrum";
+
+	private StringBuilder line = new StringBuilder(1024);
+
+	/**
+	 * Instantiates a new csv export writer.
+	 *
+	 * @param path
+	 *          the file, created or replaced
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	public CsvExportWriter(Path path) throws IOException {
+		super(path, DEFAULT_BUFFER_SIZE);
+
+		line.append(HEADER);
+		writeLine();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esplab.io.ExportWriter#writeSamples(int, long,
+	 * double[][])
+	 */
+	@Override
+	public void writeSamples(int chan, long nanos, double[][] samples) throws IOException {
+		int length = samples.length == 0 ? 0 : samples[0].length;
+		long[] instants = sampleNanos(chan, nanos, length);
+		for (int i = 0; i < length; i++) {
+			start(SAMPLES, chan, instants[i]);
+			for (double[] row : samples) {
+				line.append(',');
+				if (i < row.length) line.append(row[i]);
+			}
+			writeLine();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esplab.io.ExportWriter#writeSpectrum(int, long,
+	 * double[])
+	 */
+	@Override
+	public void writeSpectrum(int chan, long nanos, double[] spectrum) throws IOException {
+		start(SPECTRUM, chan, nanos);
+		for (double v : spectrum) {
+			line.append(',').append(v);
+		}
+		writeLine();
+	}
+
+	private void start(String type, int chan, long nanos) {
+		line.append(type).append(',').append(chan).append(',').append(nanos);
+	}
+
+	// the line is ASCII, so each char is one byte
+	private void writeLine() throws IOException {
+		line.append('\n');
+
+		int len = line.length();
+		int from = 0;
+		while (from < len) {
+			ensure(Math.min(len - from, buffer.capacity()));
+
+			int to = Math.min(len, from + buffer.remaining());
+			for (int i = from; i < to; i++) {
+				buffer.put((byte) line.charAt(i));
+			}
+			from = to;
+		}
+
+		line.setLength(0);
+		recordWritten();
+	}
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.io;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * The formats to which samples and spectra can be exported.
+ */
+public enum ExportFormat {
+
+	/** Comma separated text, one line per sample instant or spectrum. */
+	CSV,
+
+	/** The compact columnar binary format of {@link ColumnarExportWriter}. */
+	COLUMNAR;
+
+	/**
+	 * Opens a writer of this format.
+	 *
+	 * @param path
+	 *          the file, created or replaced
+	 * @return the export writer
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	public ExportWriter open(Path path) throws IOException {
+		return this == CSV ? new CsvExportWriter(path) : new ColumnarExportWriter(path);
+	}
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class ExportWriter is the superclass of the writers of an
+ * {@link ExportFormat}. Records are encoded into a single reusable direct
+ * buffer which is written to the file channel whenever it fills, so that a
+ * session of any length is exported without being held in memory and without
+ * allocating per record.<br>
+ * <br>
+ * A block of samples is written as one record per sample instant, holding the
+ * value of each row (channel) of the block at that instant; a spectrum is one
+ * record holding the value of each band. Every record carries its channel
+ * (-1 for all channels) and its nanos since the start of the session, the
+ * instants of a block spread evenly over the time since the channel's
+ * previous block by {@link #sampleNanos(int, long, int)}. Not thread safe.
+ */
+public abstract class ExportWriter implements Closeable {
+
+	/** The default size of the encode buffer, 256 KB. */
+	public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+	private final FileChannel channel;
+	private final Path path;
+
+	/** The encode buffer. */
+	protected final ByteBuffer buffer;
+
+	private long records;
+
+	private Map<Integer, Long> lastBlockNanos = new HashMap<>();
+	private long[] instants = new long[0];
+
+	/**
+	 * Instantiates a new export writer.
+	 *
+	 * @param path
+	 *          the file, created or replaced
+	 * @param bufferSize
+	 *          the size of the encode buffer
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	protected ExportWriter(Path path, int bufferSize) throws IOException {
+		this.path = path;
+		buffer = ByteBuffer.allocateDirect(bufferSize);
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE);
+	}
+
+	/**
+	 * Writes a block of samples, one record per sample instant.
+	 *
+	 * @param chan
+	 *          the channel of the block, or -1 for all channels
+	 * @param nanos
+	 *          the nanos since the start of the session of the last sample
+	 * @param samples
+	 *          the samples, one row per channel
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	public abstract void writeSamples(int chan, long nanos, double[][] samples) throws IOException;
+
+	/**
+	 * Writes a spectrum as one record.
+	 *
+	 * @param chan
+	 *          the channel
+	 * @param nanos
+	 *          the nanos since the start of the session
+	 * @param spectrum
+	 *          the spectrum
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	public abstract void writeSpectrum(int chan, long nanos, double[] spectrum) throws IOException;
+
+	/**
+	 * Ensures the buffer has room for the bytes, writing out its contents if
+	 * not.
+	 *
+	 * @param bytes
+	 *          the bytes about to be put
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	protected void ensure(int bytes) throws IOException {
+		if (buffer.remaining() >= bytes) return;
+
+		drain();
+		if (buffer.remaining() < bytes) throw new IOException("Record of " + bytes + " bytes exceeds the buffer");
+	}
+
+	/**
+	 * Gets the nanos of each sample instant of a block, spread evenly over the
+	 * time since the previous block of the channel with the last at the block's
+	 * nanos. The instants of a channel's first block are all at its nanos.
+	 *
+	 * @param chan
+	 *          the channel of the block
+	 * @param nanos
+	 *          the nanos of the block
+	 * @param length
+	 *          the number of sample instants
+	 * @return the nanos of each instant, reused by the next call
+	 */
+	protected long[] sampleNanos(int chan, long nanos, int length) {
+		Long last = lastBlockNanos.put(chan, nanos);
+		long from = last == null ? nanos : Math.min(last, nanos);
+
+		if (instants.length < length) instants = new long[length];
+		for (int i = 0; i < length; i++) {
+			instants[i] = from + (nanos - from) * (i + 1) / length;
+		}
+
+		return instants;
+	}
+
+	/**
+	 * Counts a record written.
+	 */
+	protected void recordWritten() {
+		records++;
+	}
+
+	/**
+	 * Writes out any pending records and the buffer.
+	 *
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	public void flush() throws IOException {
+		drain();
+	}
+
+	private void drain() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Gets the number of records written.
+	 *
+	 * @return the record count
+	 */
+	public long getRecordCount() {
+		return records;
+	}
+
+	/**
+	 * Gets the path.
+	 *
+	 * @return the path
+	 */
+	public Path getPath() {
+		return path;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		if (!channel.isOpen()) return;
+
+		try {
+			flush();
+		} finally {
+			channel.close();
+		}
+	}
+}
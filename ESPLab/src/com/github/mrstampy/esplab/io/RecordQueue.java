@@ -0,0 +1,306 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.io;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class RecordQueue hands records of samples and spectra from the
+ * acquisition and DSP threads to a writer thread of its own, so that file I/O
+ * never stalls the caller. Offers never block; should the writer fall behind
+ * records are dropped and counted.<br>
+ * <br>
+ * The values offered are copied into one of a pool of records, as many as the
+ * queue's capacity, whose arrays are reused once the writer has written the
+ * record, so that recording for hours allocates nothing once the arrays have
+ * grown to the size of the blocks. The pool is a stack, so that only as many
+ * records as are in flight at once hold arrays.
+ */
+class RecordQueue {
+	private static final Logger log = LoggerFactory.getLogger(RecordQueue.class);
+
+	private static final AtomicInteger threadCount = new AtomicInteger();
+
+	private final BlockingQueue<Record> queue;
+	private final RecordWriter writer;
+	private final long idleMillis;
+	private final Thread thread;
+
+	private final Record[] pool;
+	private int pooled;
+
+	private AtomicLong dropped = new AtomicLong();
+	private volatile boolean open = true;
+
+	/**
+	 * Instantiates and starts a new record queue.
+	 *
+	 * @param name
+	 *          the name of the writer thread
+	 * @param capacity
+	 *          the capacity, in records
+	 * @param idleMillis
+	 *          the millis between calls to {@link RecordWriter#idle()} while
+	 *          records are being written or awaited
+	 * @param writer
+	 *          the writer
+	 */
+	RecordQueue(String name, int capacity, long idleMillis, RecordWriter writer) {
+		queue = new ArrayBlockingQueue<>(capacity);
+		this.writer = writer;
+
+		pool = new Record[capacity];
+		for (int i = 0; i < capacity; i++) {
+			pool[i] = new Record();
+		}
+		pooled = capacity;
+		this.idleMillis = idleMillis;
+
+		thread = new Thread(() -> drain(), name + "-" + threadCount.incrementAndGet());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Offers a copy of a block of rows. Never blocks.
+	 *
+	 * @param type
+	 *          the record type
+	 * @param channel
+	 *          the channel
+	 * @param nanos
+	 *          the nanos since the start of the session
+	 * @param values
+	 *          the values, copied
+	 * @return true, if queued
+	 */
+	boolean offer(int type, int channel, long nanos, double[][] values) {
+		if (!open) return false;
+
+		Record record = acquire();
+		if (record == null) return drop();
+
+		record.set(type, channel, nanos);
+		record.values = record.block(values.length);
+		for (int i = 0; i < values.length; i++) {
+			System.arraycopy(values[i], 0, record.row(i, values[i].length), 0, values[i].length);
+		}
+
+		return enqueue(record);
+	}
+
+	/**
+	 * Offers a copy of a single row, such as a spectrum. Never blocks.
+	 *
+	 * @param type
+	 *          the record type
+	 * @param channel
+	 *          the channel
+	 * @param nanos
+	 *          the nanos since the start of the session
+	 * @param values
+	 *          the values, copied
+	 * @return true, if queued
+	 */
+	boolean offer(int type, int channel, long nanos, double[] values) {
+		if (!open) return false;
+
+		Record record = acquire();
+		if (record == null) return drop();
+
+		record.set(type, channel, nanos);
+		record.values = record.single(values.length);
+		System.arraycopy(values, 0, record.values[0], 0, values.length);
+
+		return enqueue(record);
+	}
+
+	private boolean enqueue(Record record) {
+		if (queue.offer(record)) return true;
+
+		release(record);
+		return drop();
+	}
+
+	private boolean drop() {
+		if (dropped.getAndIncrement() == 0) log.warn("{} cannot keep up, dropping records", thread.getName());
+		return false;
+	}
+
+	// the pool is as large as the queue, so is only empty when the queue is full
+	private synchronized Record acquire() {
+		return pooled == 0 ? null : pool[--pooled];
+	}
+
+	private synchronized void release(Record record) {
+		pool[pooled++] = record;
+	}
+
+	private void drain() {
+		long lastIdle = System.currentTimeMillis();
+		try {
+			while (open || !queue.isEmpty()) {
+				Record record = queue.poll(idleMillis, TimeUnit.MILLISECONDS);
+				if (record != null) {
+					try {
+						writer.write(record);
+					} finally {
+						release(record);
+					}
+				}
+
+				long now = System.currentTimeMillis();
+				if (now - lastIdle >= idleMillis) {
+					lastIdle = now;
+					writer.idle();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (Throwable e) {
+			log.error("{} failed, no further records will be written", thread.getName(), e);
+			open = false;
+			queue.clear();
+		}
+	}
+
+	/**
+	 * Stops accepting records and waits for those queued to be written.
+	 */
+	void close() {
+		open = false;
+
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Checks if records are being accepted.
+	 *
+	 * @return true, if open
+	 */
+	boolean isOpen() {
+		return open;
+	}
+
+	/**
+	 * Gets the number of records dropped because the writer could not keep up.
+	 *
+	 * @return the dropped count
+	 */
+	long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/**
+	 * Gets the number of records queued but not yet written.
+	 *
+	 * @return the depth
+	 */
+	int getDepth() {
+		return queue.size();
+	}
+
+	/**
+	 * The listener interface for writing the records of a {@link RecordQueue},
+	 * called on its writer thread only.
+	 */
+	interface RecordWriter {
+
+		/**
+		 * Writes a record. The record and its values are reused once written, so
+		 * must not be kept.
+		 *
+		 * @param record
+		 *          the record
+		 * @throws IOException
+		 *           Signals that an I/O exception has occurred.
+		 */
+		void write(Record record) throws IOException;
+
+		/**
+		 * Invoked periodically, eg. to flush.
+		 *
+		 * @throws IOException
+		 *           Signals that an I/O exception has occurred.
+		 */
+		default void idle() throws IOException {
+		}
+	}
+
+	/**
+	 * The Class Record, pooled by the queue. Blocks and single rows are copied
+	 * into arrays of their own, so that a record alternately reused for sample
+	 * blocks and spectra reallocates neither; they are reallocated only when
+	 * the number or length of the rows offered changes.
+	 */
+	static class Record {
+
+		/** The record type, usually {@link SessionFormat}'s. */
+		int type;
+
+		/** The channel. */
+		int channel;
+
+		/** The nanos since the start of the session. */
+		long nanos;
+
+		/** The values, one row for a spectrum. */
+		double[][] values;
+
+		private double[][] block = new double[0][];
+		private double[][] single = new double[][] { new double[0] };
+
+		private void set(int type, int channel, long nanos) {
+			this.type = type;
+			this.channel = channel;
+			this.nanos = nanos;
+		}
+
+		private double[][] block(int rows) {
+			if (block.length != rows) block = new double[rows][];
+
+			return block;
+		}
+
+		private double[] row(int i, int length) {
+			if (block[i] == null || block[i].length != length) block[i] = new double[length];
+
+			return block[i];
+		}
+
+		private double[][] single(int length) {
+			if (single[0].length != length) single[0] = new double[length];
+
+			return single;
+		}
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.io;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class SessionExporter exports a recorded {@link SessionFormat session
+ * file} to an {@link ExportFormat}. The session is read a record at a time
+ * into reused row buffers and written through the {@link ExportWriter}'s
+ * encode buffer, so sessions of any length are exported in chunks without
+ * being held in memory. {@link #exportAsync(Path, Path, ExportFormat)} runs
+ * the export on an io thread, keeping it off both the FX thread and the
+ * acquisition threads.
+ */
+public class SessionExporter {
+	private static final Logger log = LoggerFactory.getLogger(SessionExporter.class);
+
+	private static Scheduler scheduler = Schedulers.io();
+
+	private SessionExporter() {
+	}
+
+	/**
+	 * Exports the session to the file in the given format on an io thread.
+	 *
+	 * @param session
+	 *          the session file
+	 * @param export
+	 *          the export file, created or replaced
+	 * @param format
+	 *          the format
+	 * @return the future number of records written
+	 */
+	public static CompletableFuture<Long> exportAsync(Path session, Path export, ExportFormat format) {
+		CompletableFuture<Long> future = new CompletableFuture<>();
+
+		scheduler.schedule(t -> {
+			try {
+				future.complete(export(session, export, format));
+			} catch (Throwable e) {
+				log.error("Could not export {} to {}", session, export, e);
+				future.completeExceptionally(e);
+			}
+		});
+
+		return future;
+	}
+
+	/**
+	 * Exports the session to the file in the given format on the calling
+	 * thread.
+	 *
+	 * @param session
+	 *          the session file
+	 * @param export
+	 *          the export file, created or replaced
+	 * @param format
+	 *          the format
+	 * @return the number of records written
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	public static long export(Path session, Path export, ExportFormat format) throws IOException {
+		try (SessionReader reader = new SessionReader(session); ExportWriter writer = format.open(export)) {
+			return export(reader, writer);
+		}
+	}
+
+	/**
+	 * Exports the remaining records of the reader to the writer, neither of
+	 * which is closed.
+	 *
+	 * @param reader
+	 *          the reader
+	 * @param writer
+	 *          the writer
+	 * @return the number of records written
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	public static long export(SessionReader reader, ExportWriter writer) throws IOException {
+		long before = writer.getRecordCount();
+		double[][] rows = new double[0][0];
+
+		while (reader.next()) {
+			rows = ensureCapacity(rows, reader.getRows(), reader.getLength());
+			for (int i = 0; i < rows.length; i++) {
+				reader.readRow(i, rows[i]);
+			}
+
+			switch (reader.getType()) {
+			case SessionFormat.SAMPLES:
+				writer.writeSamples(reader.getChannel(), reader.getTimestamp(), rows);
+				break;
+			case SessionFormat.SPECTRUM:
+				if (rows.length > 0) writer.writeSpectrum(reader.getChannel(), reader.getTimestamp(), rows[0]);
+				break;
+			default:
+				log.warn("Skipping record of unknown type {} in {}", reader.getType(), reader.getPath());
+				break;
+			}
+		}
+
+		writer.flush();
+
+		return writer.getRecordCount() - before;
+	}
+
+	private static double[][] ensureCapacity(double[][] rows, int num, int length) {
+		if (rows.length == num && (num == 0 || rows[0].length == length)) return rows;
+
+		return new double[num][length];
+	}
+
+	/**
+	 * Sets the scheduler on which asynchronous exports run, defaults to
+	 * {@link Schedulers#io()}.
+	 *
+	 * @param scheduler
+	 *          the new scheduler
+	 */
+	public static void setScheduler(Scheduler scheduler) {
+		if (scheduler == null) throw new IllegalArgumentException("Scheduler must be specified");
+		SessionExporter.scheduler = scheduler;
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.io;
+
+import java.nio.ByteOrder;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The constants of the session file format written by {@link SessionRecorder}
+ * and read by {@link SessionReader}. All values are little endian and every
+ * record starts on an 8 byte boundary.<br>
+ * <br>
+ * The file starts with a {@link #HEADER_SIZE} byte header:
+ * 
+ * <pre>
+ * int    magic ({@link #MAGIC})
+ * int    version ({@link #VERSION})
+ * long   start time, millis since the epoch
+ * int    number of channels of the connection
+ * int    length of the connection name in bytes (UTF-8, at most {@link #MAX_NAME_LENGTH})
+ * byte[] connection name, zero padded
+ * </pre>
+ * 
+ * followed by records, each a {@link #RECORD_HEADER_SIZE} byte record header
+ * and its data:
+ * 
+ * <pre>
+ * int      type ({@link #SAMPLES} or {@link #SPECTRUM})
+ * int      channel, or -1 for all channels
+ * long     nanos since the start of the session
+ * int      rows
+ * int      length of each row
+ * double[] rows * length values, row by row
+ * </pre>
+ * 
+ * A record type of 0 or the end of the file marks the end of the session.
+ */
+public final class SessionFormat {
+
+	/** The magic number, 'ESPS'. */
+	public static final int MAGIC = 0x45535053;
+
+	/** The format version. */
+	public static final int VERSION = 1;
+
+	/** The size of the file header. */
+	public static final int HEADER_SIZE = 64;
+
+	/** The maximum length of the connection name in bytes. */
+	public static final int MAX_NAME_LENGTH = HEADER_SIZE - 24;
+
+	/** The size of a record header. */
+	public static final int RECORD_HEADER_SIZE = 24;
+
+	/** The end of session marker. */
+	public static final int END = 0;
+
+	/** Record type of raw samples as returned by the connection. */
+	public static final int SAMPLES = 1;
+
+	/** Record type of a processed spectrum. */
+	public static final int SPECTRUM = 2;
+
+	/** The byte order. */
+	public static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	private SessionFormat() {
+	}
+
+	/**
+	 * Returns the size in bytes of a record.
+	 *
+	 * @param rows
+	 *          the rows
+	 * @param length
+	 *          the length of each row
+	 * @return the record size
+	 */
+	public static long recordSize(int rows, int length) {
+		return RECORD_HEADER_SIZE + 8L * rows * length;
+	}
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class SessionReader reads a {@link SessionFormat session file} written
+ * by a {@link SessionRecorder}, one record at a time, through read only memory
+ * mappings of the file. Values are copied straight out of the mapping into
+ * caller supplied arrays.
+ * 
+ * <pre>
+ * try (SessionReader reader = new SessionReader(path)) {
+ * 	while (reader.next()) {
+ * 		if (reader.getType() == SessionFormat.SAMPLES) ...
+ * 	}
+ * }
+ * </pre>
+ */
+public class SessionReader implements Closeable {
+
+	private final FileChannel channel;
+	private final Path path;
+	private final long size;
+	private final int regionSize;
+
+	private long startMillis;
+	private int numChannels;
+	private String name;
+
+	private MappedByteBuffer region;
+	private DoubleBuffer doubles;
+	private long regionStart;
+
+	private long position;
+	private long recordStart = -1;
+
+	private int type;
+	private int recordChannel;
+	private long timestamp;
+	private int rows;
+	private int length;
+
+	/**
+	 * Instantiates a new session reader.
+	 *
+	 * @param path
+	 *          the path
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred, or the file is not a
+	 *           session file
+	 */
+	public SessionReader(Path path) throws IOException {
+		this(path, SessionRecorder.DEFAULT_REGION_SIZE);
+	}
+
+	/**
+	 * Instantiates a new session reader.
+	 *
+	 * @param path
+	 *          the path
+	 * @param regionSize
+	 *          the size of each mapped region
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred, or the file is not a
+	 *           session file
+	 */
+	public SessionReader(Path path, int regionSize) throws IOException {
+		this.path = path;
+		this.regionSize = regionSize;
+		channel = FileChannel.open(path, StandardOpenOption.READ);
+		size = channel.size();
+
+		readHeader();
+	}
+
+	private void readHeader() throws IOException {
+		if (size < SessionFormat.HEADER_SIZE) throw new IOException("Not a session file: " + path);
+
+		map(0, SessionFormat.HEADER_SIZE);
+
+		if (region.getInt() != SessionFormat.MAGIC) throw new IOException("Not a session file: " + path);
+
+		int version = region.getInt();
+		if (version != SessionFormat.VERSION) throw new IOException("Unsupported session file version " + version);
+
+		startMillis = region.getLong();
+		numChannels = region.getInt();
+
+		int len = Math.min(region.getInt(), SessionFormat.MAX_NAME_LENGTH);
+		byte[] bytes = new byte[len];
+		region.get(bytes);
+		name = new String(bytes, StandardCharsets.UTF_8);
+
+		position = SessionFormat.HEADER_SIZE;
+	}
+
+	/**
+	 * Advances to the next record.
+	 *
+	 * @return true, if there is a record
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred, or the record is
+	 *           corrupt: of an unknown type, or of a negative size or one
+	 *           extending beyond the end of the file
+	 */
+	public boolean next() throws IOException {
+		if (position + SessionFormat.RECORD_HEADER_SIZE > size) return false;
+
+		ensureMapped(position, SessionFormat.RECORD_HEADER_SIZE);
+		region.position((int) (position - regionStart));
+
+		type = region.getInt();
+		if (type == SessionFormat.END) return false;
+
+		recordChannel = region.getInt();
+		timestamp = region.getLong();
+		rows = region.getInt();
+		length = region.getInt();
+
+		if (type != SessionFormat.SAMPLES && type != SessionFormat.SPECTRUM) throw corrupt("unknown type " + type);
+		if (rows < 0 || length < 0) throw corrupt(rows + " rows of " + length);
+
+		// checked before multiplying, which could overflow
+		long available = size - position - SessionFormat.RECORD_HEADER_SIZE;
+		if (length > 0 && rows > available / 8 / length) throw corrupt(rows + " rows of " + length + " beyond the end");
+
+		long recordSize = SessionFormat.recordSize(rows, length);
+		if (recordSize > Integer.MAX_VALUE) throw corrupt(rows + " rows of " + length + " exceeds a mapping");
+
+		ensureMapped(position, recordSize);
+		recordStart = position;
+		position += recordSize;
+
+		return true;
+	}
+
+	private IOException corrupt(String reason) {
+		recordStart = -1;
+		return new IOException("Corrupt record at " + position + " of " + path + ": " + reason);
+	}
+
+	/**
+	 * Copies a row of the current record into the destination, which must be
+	 * at least {@link #getLength()} long.
+	 *
+	 * @param row
+	 *          the row
+	 * @param dest
+	 *          the destination
+	 */
+	public void readRow(int row, double[] dest) {
+		if (recordStart < 0) throw new IllegalStateException("No current record");
+		if (row < 0 || row >= rows) throw new IndexOutOfBoundsException("Row " + row + " of " + rows);
+
+		long offset = recordStart - regionStart + SessionFormat.RECORD_HEADER_SIZE + 8L * row * length;
+		doubles.position((int) (offset / 8));
+		doubles.get(dest, 0, length);
+	}
+
+	/**
+	 * Returns a copy of the current record's values.
+	 *
+	 * @return the values, [rows][length]
+	 */
+	public double[][] read() {
+		double[][] values = new double[rows][length];
+		for (int i = 0; i < rows; i++) {
+			readRow(i, values[i]);
+		}
+
+		return values;
+	}
+
+	/**
+	 * Returns to the first record.
+	 */
+	public void rewind() {
+		position = SessionFormat.HEADER_SIZE;
+		recordStart = -1;
+	}
+
+	private void ensureMapped(long start, long len) throws IOException {
+		if (region != null && start >= regionStart && start + len <= regionStart + region.capacity()) return;
+
+		map(start, (int) Math.min(size - start, Math.max(regionSize, len)));
+	}
+
+	private void map(long start, int len) throws IOException {
+		region = channel.map(MapMode.READ_ONLY, start, len);
+		region.order(SessionFormat.ORDER);
+		doubles = region.asDoubleBuffer();
+		regionStart = start;
+	}
+
+	/**
+	 * Gets the type of the current record.
+	 *
+	 * @return the type
+	 */
+	public int getType() {
+		return type;
+	}
+
+	/**
+	 * Gets the channel of the current record.
+	 *
+	 * @return the channel
+	 */
+	public int getChannel() {
+		return recordChannel;
+	}
+
+	/**
+	 * Gets the nanos since the start of the session of the current record.
+	 *
+	 * @return the timestamp
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Gets the number of rows of the current record.
+	 *
+	 * @return the rows
+	 */
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * Gets the length of each row of the current record.
+	 *
+	 * @return the length
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Gets the session start time, millis since the epoch.
+	 *
+	 * @return the start millis
+	 */
+	public long getStartMillis() {
+		return startMillis;
+	}
+
+	/**
+	 * Gets the number of channels of the recorded connection.
+	 *
+	 * @return the num channels
+	 */
+	public int getNumChannels() {
+		return numChannels;
+	}
+
+	/**
+	 * Gets the name of the recorded connection.
+	 *
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Gets the path.
+	 *
+	 * @return the path
+	 */
+	public Path getPath() {
+		return path;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		region = null;
+		doubles = null;
+		channel.close();
+	}
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.mrstampy.esp.dsp.lab.RawEspConnection;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class SessionRecorder appends raw sample blocks and processed spectra to
+ * a memory mapped, append only {@link SessionFormat session file}. Recording
+ * may be done from several threads (eg. the polling thread for samples and the
+ * DSP thread for spectra); each record is copied, timestamped and handed to a
+ * writer thread of the recorder's own, so that neither the appends nor the
+ * remapping of the file as it grows ever stall the caller. Should the writer
+ * fall behind by {@link #DEFAULT_CAPACITY} records further records are dropped
+ * and counted.<br>
+ * <br>
+ * The writer maps the file a region at a time and bulk copies values into the
+ * mapping; the operating system writes the pages out in the background. Each
+ * region is unmapped once full, and on {@link #close()} the last is unmapped
+ * before the file is truncated to the data written.
+ */
+public class SessionRecorder implements Closeable {
+	private static final Logger log = LoggerFactory.getLogger(SessionRecorder.class);
+
+	/** The default size of each mapped region, 64 MB. */
+	public static final int DEFAULT_REGION_SIZE = 64 * 1024 * 1024;
+
+	/** The default number of records which may await the writer. */
+	public static final int DEFAULT_CAPACITY = 16384;
+
+	private static final long IDLE_MILLIS = 1000;
+
+	private final FileChannel channel;
+	private final Path path;
+	private final int regionSize;
+	private final long startNanos;
+
+	private final RecordQueue queue;
+
+	// writer thread only, once constructed
+	private MappedByteBuffer region;
+	private DoubleBuffer doubles;
+	private long regionStart;
+
+	private volatile long written;
+	private AtomicLong records = new AtomicLong();
+
+	/**
+	 * Instantiates a new session recorder with the default region size.
+	 *
+	 * @param path
+	 *          the file, created or replaced
+	 * @param connection
+	 *          the connection being recorded
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	public SessionRecorder(Path path, RawEspConnection connection) throws IOException {
+		this(path, connection.getName(), connection.getNumChannels(), DEFAULT_REGION_SIZE);
+	}
+
+	/**
+	 * Instantiates a new session recorder.
+	 *
+	 * @param path
+	 *          the file, created or replaced
+	 * @param name
+	 *          the name of the connection
+	 * @param numChannels
+	 *          the number of channels
+	 * @param regionSize
+	 *          the size of each mapped region
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	public SessionRecorder(Path path, String name, int numChannels, int regionSize) throws IOException {
+		this(path, name, numChannels, regionSize, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Instantiates a new session recorder.
+	 *
+	 * @param path
+	 *          the file, created or replaced
+	 * @param name
+	 *          the name of the connection
+	 * @param numChannels
+	 *          the number of channels
+	 * @param regionSize
+	 *          the size of each mapped region
+	 * @param capacity
+	 *          the number of records which may await the writer
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	public SessionRecorder(Path path, String name, int numChannels, int regionSize, int capacity) throws IOException {
+		if (regionSize < SessionFormat.HEADER_SIZE) throw new IllegalArgumentException("Region size too small: " + regionSize);
+
+		this.path = path;
+		this.regionSize = regionSize;
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+		startNanos = System.nanoTime();
+
+		map(0, regionSize);
+		writeHeader(name, numChannels);
+
+		queue = new RecordQueue("ESPLab Recorder", capacity, IDLE_MILLIS, rec -> append(rec));
+	}
+
+	private void writeHeader(String name, int numChannels) {
+		byte[] bytes = name == null ? new byte[0] : name.getBytes(StandardCharsets.UTF_8);
+		int len = Math.min(bytes.length, SessionFormat.MAX_NAME_LENGTH);
+
+		region.putInt(SessionFormat.MAGIC);
+		region.putInt(SessionFormat.VERSION);
+		region.putLong(System.currentTimeMillis());
+		region.putInt(numChannels);
+		region.putInt(len);
+		region.put(bytes, 0, len);
+
+		written = SessionFormat.HEADER_SIZE;
+	}
+
+	/**
+	 * Record a copy of a block of samples. Never blocks.
+	 *
+	 * @param channel
+	 *          the channel, or -1 for all channels
+	 * @param samples
+	 *          the samples
+	 */
+	public void recordSamples(int channel, double[][] samples) {
+		if (!queue.isOpen()) return;
+
+		queue.offer(SessionFormat.SAMPLES, channel, System.nanoTime() - startNanos, samples);
+	}
+
+	/**
+	 * Record a copy of a processed spectrum. Never blocks.
+	 *
+	 * @param channel
+	 *          the channel
+	 * @param spectrum
+	 *          the spectrum
+	 */
+	public void recordSpectrum(int channel, double[] spectrum) {
+		if (!queue.isOpen()) return;
+
+		queue.offer(SessionFormat.SPECTRUM, channel, System.nanoTime() - startNanos, spectrum);
+	}
+
+	private void append(RecordQueue.Record rec) throws IOException {
+		double[][] rows = rec.values;
+		int length = maxLength(rows);
+		long size = SessionFormat.recordSize(rows.length, length);
+
+		ensureCapacity(size);
+
+		int pos = (int) (written - regionStart);
+		region.position(pos);
+		region.putInt(rec.type);
+		region.putInt(rec.channel);
+		region.putLong(rec.nanos);
+		region.putInt(rows.length);
+		region.putInt(length);
+
+		doubles.position((pos + SessionFormat.RECORD_HEADER_SIZE) / 8);
+		for (double[] r : rows) {
+			doubles.put(r);
+			for (int i = r.length; i < length; i++) {
+				doubles.put(Double.NaN);
+			}
+		}
+
+		written += size;
+		records.incrementAndGet();
+	}
+
+	private int maxLength(double[][] rows) {
+		int max = 0;
+		for (double[] r : rows) {
+			max = Math.max(max, r.length);
+		}
+
+		return max;
+	}
+
+	private void ensureCapacity(long size) throws IOException {
+		if (written + size <= regionStart + region.capacity()) return;
+
+		map(written, (int) Math.max(regionSize, size));
+	}
+
+	private void map(long start, int size) throws IOException {
+		Unmapper.unmap(region);
+		region = null;
+		doubles = null;
+
+		region = channel.map(MapMode.READ_WRITE, start, size);
+		region.order(SessionFormat.ORDER);
+		doubles = region.asDoubleBuffer();
+		regionStart = start;
+	}
+
+	/**
+	 * Gets the number of records written.
+	 *
+	 * @return the record count
+	 */
+	public long getRecordCount() {
+		return records.get();
+	}
+
+	/**
+	 * Gets the number of bytes written, including the header.
+	 *
+	 * @return the bytes written
+	 */
+	public long getBytesWritten() {
+		return written;
+	}
+
+	/**
+	 * Gets the path.
+	 *
+	 * @return the path
+	 */
+	public Path getPath() {
+		return path;
+	}
+
+	/**
+	 * Gets the number of records dropped because the writer could not keep up.
+	 *
+	 * @return the dropped count
+	 */
+	public long getDroppedCount() {
+		return queue.getDroppedCount();
+	}
+
+	/**
+	 * Checks if is open.
+	 *
+	 * @return true, if is open
+	 */
+	public boolean isOpen() {
+		return queue.isOpen();
+	}
+
+	/**
+	 * Stops recording, waits for the queued records to be written, unmaps the
+	 * file and truncates it to the data written.
+	 *
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (!channel.isOpen()) return;
+		queue.close();
+
+		if (region != null) {
+			region.force();
+			if (!Unmapper.unmap(region)) log.debug("Session file {} left to be unmapped on collection", path);
+		}
+		region = null;
+		doubles = null;
+
+		try {
+			channel.truncate(written);
+		} catch (IOException e) {
+			log.warn("Could not truncate session file {} to {} bytes", path, written, e);
+		} finally {
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.io;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.MappedByteBuffer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class Unmapper releases the mapping of a {@link MappedByteBuffer}
+ * immediately rather than when it is garbage collected, which is needed
+ * before a mapped file can be truncated on Windows. There is no public API for
+ * this; the buffer's cleaner is invoked reflectively, through
+ * {@code sun.misc.Unsafe.invokeCleaner} where available (Java 9+) and the
+ * buffer's own {@code cleaner()} otherwise. The buffer must not be used once
+ * unmapped.
+ */
+class Unmapper {
+	private static final Logger log = LoggerFactory.getLogger(Unmapper.class);
+
+	private Unmapper() {
+	}
+
+	/**
+	 * Unmaps the buffer.
+	 *
+	 * @param buffer
+	 *          the buffer, null for none
+	 * @return true, if unmapped
+	 */
+	static boolean unmap(MappedByteBuffer buffer) {
+		if (buffer == null) return false;
+
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", java.nio.ByteBuffer.class);
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			invokeCleaner.invoke(theUnsafe.get(null), buffer);
+			return true;
+		} catch (NoSuchMethodException e) {
+			return cleanJava8(buffer);
+		} catch (Exception e) {
+			log.debug("Could not unmap buffer", e);
+			return false;
+		}
+	}
+
+	private static boolean cleanJava8(MappedByteBuffer buffer) {
+		try {
+			Method cleaner = buffer.getClass().getMethod("cleaner");
+			cleaner.setAccessible(true);
+			Object c = cleaner.invoke(buffer);
+			if (c == null) return false;
+
+			c.getClass().getMethod("clean").invoke(c);
+			return true;
+		} catch (Exception e) {
+			log.debug("Could not unmap buffer", e);
+			return false;
+		}
+	}
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class EngineMetrics holds the instrumentation of one engine and its
+ * views: a {@link LatencyHistogram} per {@link Stage}, counters of samples
+ * received and dropped, and the achieved frame rate. Recording is cheap
+ * enough to be always on; the metrics are read over JMX once
+ * {@link #register(String)}ed, or on screen.<br>
+ * <br>
+ * Dropped counts are summed from the sources added by the buffers which drop
+ * them, so that nothing is counted twice on the hot path.
+ */
+public class EngineMetrics implements EngineMetricsMXBean {
+	private static final Logger log = LoggerFactory.getLogger(EngineMetrics.class);
+
+	/** The JMX domain. */
+	public static final String DOMAIN = "com.github.mrstampy.esplab";
+
+	private static final long ONE_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	private final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+	private volatile LatencyHistogram fetch;
+
+	private final LongAdder samplesReceived = new LongAdder();
+	private final List<LongSupplier> samplesDropped = new CopyOnWriteArrayList<>();
+	private final List<LongSupplier> blocksDropped = new CopyOnWriteArrayList<>();
+
+	private long fpsStart;
+	private int fpsFrames;
+	private volatile double fps;
+
+	private ObjectName name;
+
+	/**
+	 * Instantiates a new engine metrics.
+	 */
+	public EngineMetrics() {
+		for (int i = 0; i < histograms.length; i++) {
+			histograms[i] = new LatencyHistogram();
+		}
+
+		fetch = histograms[Stage.FETCH.ordinal()];
+	}
+
+	/**
+	 * Gets the histogram of the stage.
+	 *
+	 * @param stage
+	 *          the stage
+	 * @return the histogram
+	 */
+	public LatencyHistogram getHistogram(Stage stage) {
+		return stage == Stage.FETCH ? fetch : histograms[stage.ordinal()];
+	}
+
+	/**
+	 * Records a duration for the stage.
+	 *
+	 * @param stage
+	 *          the stage
+	 * @param nanos
+	 *          the nanos
+	 */
+	public void record(Stage stage, long nanos) {
+		getHistogram(stage).record(nanos);
+	}
+
+	/**
+	 * Records the duration of the stage since the specified
+	 * {@link System#nanoTime()}.
+	 *
+	 * @param stage
+	 *          the stage
+	 * @param startNanos
+	 *          the start nanos
+	 */
+	public void recordSince(Stage stage, long startNanos) {
+		getHistogram(stage).recordSince(startNanos);
+	}
+
+	/**
+	 * Uses the fetch histogram of the connection being polled, which is
+	 * shared by every engine polling it. Null reverts to an empty histogram.
+	 *
+	 * @param histogram
+	 *          the new fetch histogram
+	 */
+	public void setFetchHistogram(LatencyHistogram histogram) {
+		fetch = histogram == null ? histograms[Stage.FETCH.ordinal()] : histogram;
+	}
+
+	/**
+	 * Counts samples received.
+	 *
+	 * @param samples
+	 *          the samples
+	 */
+	public void received(double[][] samples) {
+		for (double[] row : samples) {
+			samplesReceived.add(row.length);
+		}
+	}
+
+	/**
+	 * Adds a source of dropped samples.
+	 *
+	 * @param source
+	 *          the source
+	 */
+	public void addSamplesDroppedSource(LongSupplier source) {
+		samplesDropped.add(source);
+	}
+
+	/**
+	 * Adds a source of dropped blocks.
+	 *
+	 * @param source
+	 *          the source
+	 */
+	public void addBlocksDroppedSource(LongSupplier source) {
+		blocksDropped.add(source);
+	}
+
+	/**
+	 * Records a frame rendered since the specified {@link System#nanoTime()}.
+	 * FX thread only.
+	 *
+	 * @param startNanos
+	 *          the start nanos
+	 */
+	public void frame(long startNanos) {
+		long now = System.nanoTime();
+		histograms[Stage.FRAME.ordinal()].record(now - startNanos);
+
+		fpsFrames++;
+		long elapsed = now - fpsStart;
+		if (elapsed < ONE_SECOND) return;
+
+		fps = fpsStart == 0 ? 0 : fpsFrames * (double) ONE_SECOND / elapsed;
+		fpsStart = now;
+		fpsFrames = 0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esplab.metrics.EngineMetricsMXBean#getSamplesReceived()
+	 */
+	@Override
+	public long getSamplesReceived() {
+		return samplesReceived.sum();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esplab.metrics.EngineMetricsMXBean#getSamplesDropped()
+	 */
+	@Override
+	public long getSamplesDropped() {
+		return sum(samplesDropped);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esplab.metrics.EngineMetricsMXBean#getBlocksDropped()
+	 */
+	@Override
+	public long getBlocksDropped() {
+		return sum(blocksDropped);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esplab.metrics.EngineMetricsMXBean#getFps()
+	 */
+	@Override
+	public double getFps() {
+		return fps;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esplab.metrics.EngineMetricsMXBean#getFetchLatency()
+	 */
+	@Override
+	public LatencySnapshot getFetchLatency() {
+		return getHistogram(Stage.FETCH).snapshot();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esplab.metrics.EngineMetricsMXBean#getDeliverLatency()
+	 */
+	@Override
+	public LatencySnapshot getDeliverLatency() {
+		return getHistogram(Stage.DELIVER).snapshot();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esplab.metrics.EngineMetricsMXBean#getDspLatency()
+	 */
+	@Override
+	public LatencySnapshot getDspLatency() {
+		return getHistogram(Stage.DSP).snapshot();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esplab.metrics.EngineMetricsMXBean#getFxLag()
+	 */
+	@Override
+	public LatencySnapshot getFxLag() {
+		return getHistogram(Stage.FX_LAG).snapshot();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esplab.metrics.EngineMetricsMXBean#getFrameTime()
+	 */
+	@Override
+	public LatencySnapshot getFrameTime() {
+		return getHistogram(Stage.FRAME).snapshot();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.mrstampy.esplab.metrics.EngineMetricsMXBean#reset()
+	 */
+	@Override
+	public void reset() {
+		for (LatencyHistogram h : histograms) {
+			h.reset();
+		}
+
+		fps = 0;
+	}
+
+	/**
+	 * Registers the metrics with the platform MBean server as
+	 * {@value #DOMAIN}:type=EngineMetrics,name=[name], replacing any previous
+	 * registration of these metrics.
+	 *
+	 * @param name
+	 *          the name
+	 */
+	public synchronized void register(String name) {
+		unregister();
+
+		try {
+			ObjectName on = new ObjectName(DOMAIN + ":type=EngineMetrics,name=" + ObjectName.quote(name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+			this.name = on;
+		} catch (JMException e) {
+			log.error("Could not register metrics {}", name, e);
+		}
+	}
+
+	/**
+	 * Unregisters the metrics, if registered.
+	 */
+	public synchronized void unregister() {
+		if (name == null) return;
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			if (server.isRegistered(name)) server.unregisterMBean(name);
+		} catch (JMException e) {
+			log.error("Could not unregister metrics {}", name, e);
+		}
+
+		name = null;
+	}
+
+	private long sum(List<LongSupplier> sources) {
+		long sum = 0;
+		for (LongSupplier s : sources) {
+			sum += s.getAsLong();
+		}
+
+		return sum;
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.metrics;
+
+/**
+ * The JMX interface of {@link EngineMetrics}. Latencies are in microseconds.
+ */
+public interface EngineMetricsMXBean {
+
+	/**
+	 * Gets the samples received from the connection.
+	 *
+	 * @return the samples received
+	 */
+	long getSamplesReceived();
+
+	/**
+	 * Gets the samples discarded before display.
+	 *
+	 * @return the samples dropped
+	 */
+	long getSamplesDropped();
+
+	/**
+	 * Gets the blocks of samples discarded before processing.
+	 *
+	 * @return the blocks dropped
+	 */
+	long getBlocksDropped();
+
+	/**
+	 * Gets the frames rendered per second over the last second.
+	 *
+	 * @return the fps
+	 */
+	double getFps();
+
+	/**
+	 * Gets the time taken fetching samples from the connection.
+	 *
+	 * @return the fetch latency
+	 */
+	LatencySnapshot getFetchLatency();
+
+	/**
+	 * Gets the time taken passing samples through the engine.
+	 *
+	 * @return the deliver latency
+	 */
+	LatencySnapshot getDeliverLatency();
+
+	/**
+	 * Gets the time taken by Lab.process.
+	 *
+	 * @return the dsp latency
+	 */
+	LatencySnapshot getDspLatency();
+
+	/**
+	 * Gets the delay between requesting and performing a render on the FX
+	 * thread.
+	 *
+	 * @return the fx lag
+	 */
+	LatencySnapshot getFxLag();
+
+	/**
+	 * Gets the time taken rendering a frame.
+	 *
+	 * @return the frame time
+	 */
+	LatencySnapshot getFrameTime();
+
+	/**
+	 * Clears the latencies and the fps. Counters are cumulative.
+	 */
+	void reset();
+}
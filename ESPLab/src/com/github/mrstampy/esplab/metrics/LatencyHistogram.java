@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class LatencyHistogram records durations in nanoseconds into power of
+ * two buckets, so that recording costs a few uncontended atomic increments
+ * and no allocation and may be left on in production. Percentiles are
+ * accurate to within a factor of two, reported as the upper bound of the
+ * bucket in which they fall (capped at the maximum recorded). Safe for any
+ * number of recording threads.
+ */
+public class LatencyHistogram {
+
+	private static final int BUCKETS = 64;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder total = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records a duration.
+	 *
+	 * @param nanos
+	 *          the duration in nanos
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) nanos = 0;
+
+		buckets.incrementAndGet(bucket(nanos));
+		count.increment();
+		total.add(nanos);
+
+		long m = max.get();
+		while (nanos > m && !max.compareAndSet(m, nanos)) {
+			m = max.get();
+		}
+	}
+
+	/**
+	 * Records the duration since the specified {@link System#nanoTime()}.
+	 *
+	 * @param startNanos
+	 *          the start nanos
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Gets the number of durations recorded.
+	 *
+	 * @return the count
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * Gets the mean duration.
+	 *
+	 * @return the mean in nanos
+	 */
+	public double getMean() {
+		long c = count.sum();
+		return c == 0 ? 0 : (double) total.sum() / c;
+	}
+
+	/**
+	 * Gets the longest duration.
+	 *
+	 * @return the max in nanos
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Gets the duration below which the specified fraction of durations fall.
+	 *
+	 * @param fraction
+	 *          the fraction, 0 - 1
+	 * @return the percentile in nanos
+	 */
+	public long getPercentile(double fraction) {
+		long c = count.sum();
+		if (c == 0) return 0;
+
+		long target = (long) Math.ceil(c * Math.min(1, Math.max(0, fraction)));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += buckets.get(i);
+			if (seen >= target) return Math.min(upperBound(i), getMax());
+		}
+
+		return getMax();
+	}
+
+	/**
+	 * Clears all recorded durations. Durations recorded concurrently may be
+	 * partially cleared.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets.set(i, 0);
+		}
+
+		count.reset();
+		total.reset();
+		max.set(0);
+	}
+
+	/**
+	 * Takes a snapshot of the histogram.
+	 *
+	 * @return the latency snapshot
+	 */
+	public LatencySnapshot snapshot() {
+		return new LatencySnapshot(getCount(), micros(getMean()), micros(getPercentile(0.5)),
+				micros(getPercentile(0.9)), micros(getPercentile(0.99)), micros(getMax()));
+	}
+
+	private static double micros(double nanos) {
+		return nanos / TimeUnit.MICROSECONDS.toNanos(1);
+	}
+
+	private static int bucket(long nanos) {
+		return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+	}
+
+	private static long upperBound(int bucket) {
+		return bucket >= 63 ? Long.MAX_VALUE : (1L << bucket) - 1;
+	}
+}
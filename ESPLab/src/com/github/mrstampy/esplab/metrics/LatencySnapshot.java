@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.metrics;
+
+import java.beans.ConstructorProperties;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class LatencySnapshot is an immutable summary of a
+ * {@link LatencyHistogram}, in microseconds, as exposed over JMX.
+ */
+public class LatencySnapshot {
+
+	private final long count;
+	private final double mean;
+	private final double p50;
+	private final double p90;
+	private final double p99;
+	private final double max;
+
+	/**
+	 * Instantiates a new latency snapshot.
+	 *
+	 * @param count
+	 *          the count
+	 * @param mean
+	 *          the mean
+	 * @param p50
+	 *          the 50th percentile
+	 * @param p90
+	 *          the 90th percentile
+	 * @param p99
+	 *          the 99th percentile
+	 * @param max
+	 *          the max
+	 */
+	@ConstructorProperties({ "count", "mean", "p50", "p90", "p99", "max" })
+	public LatencySnapshot(long count, double mean, double p50, double p90, double p99, double max) {
+		this.count = count;
+		this.mean = mean;
+		this.p50 = p50;
+		this.p90 = p90;
+		this.p99 = p99;
+		this.max = max;
+	}
+
+	/**
+	 * Gets the count.
+	 *
+	 * @return the count
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Gets the mean.
+	 *
+	 * @return the mean in micros
+	 */
+	public double getMean() {
+		return mean;
+	}
+
+	/**
+	 * Gets the 50th percentile.
+	 *
+	 * @return the p50 in micros
+	 */
+	public double getP50() {
+		return p50;
+	}
+
+	/**
+	 * Gets the 90th percentile.
+	 *
+	 * @return the p90 in micros
+	 */
+	public double getP90() {
+		return p90;
+	}
+
+	/**
+	 * Gets the 99th percentile.
+	 *
+	 * @return the p99 in micros
+	 */
+	public double getP99() {
+		return p99;
+	}
+
+	/**
+	 * Gets the max.
+	 *
+	 * @return the max in micros
+	 */
+	public double getMax() {
+		return max;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return String.format("n=%d mean=%.1f p50=%.1f p90=%.1f p99=%.1f max=%.1f us", count, mean, p50, p90, p99, max);
+	}
+}
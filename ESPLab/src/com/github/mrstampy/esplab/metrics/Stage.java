@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.metrics;
+
+/**
+ * The stages of the acquisition to render path timed by {@link EngineMetrics}.
+ */
+public enum Stage {
+
+	/** Fetching samples from the connection, ie. getCurrentFor. */
+	FETCH,
+
+	/** Passing polled samples through the engine to its listeners. */
+	DELIVER,
+
+	/** Lab.process. */
+	DSP,
+
+	/**
+	 * From samples or spectra being ready until rendering begins on the FX
+	 * thread.
+	 */
+	FX_LAG,
+
+	/** Rendering a frame on the FX thread. */
+	FRAME;
+}
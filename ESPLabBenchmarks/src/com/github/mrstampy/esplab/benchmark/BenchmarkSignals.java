@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.github.mrstampy.esp.dsp.lab.DefaultLab;
+import com.github.mrstampy.esp.dsp.lab.Lab;
+import com.github.mrstampy.esplab.connection.SyntheticConnection;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class BenchmarkSignals creates the connections, labs and sample blocks
+ * shared by the benchmarks. Blocks are seeded so that runs are comparable.
+ */
+public class BenchmarkSignals {
+
+	/** The number of bands of the labs, as used by the PowerGraph. */
+	public static final int NUM_BANDS = 41;
+
+	/** The sample rate of the synthetic connections. */
+	public static final double SAMPLE_RATE = 512;
+
+	private BenchmarkSignals() {
+	}
+
+	/**
+	 * Creates a block of samples, one row per channel, of a 10 Hz sine plus
+	 * noise.
+	 *
+	 * @param channels
+	 *          the channels
+	 * @param blockSize
+	 *          the block size
+	 * @return the block
+	 */
+	public static double[][] block(int channels, int blockSize) {
+		Random random = new Random(channels * 31 + blockSize);
+
+		double[][] block = new double[channels][blockSize];
+		for (int ch = 0; ch < channels; ch++) {
+			for (int i = 0; i < blockSize; i++) {
+				block[ch][i] = Math.sin(2 * Math.PI * 10 * i / SAMPLE_RATE) + 0.2 * random.nextGaussian();
+			}
+		}
+
+		return block;
+	}
+
+	/**
+	 * Creates a synthetic connection, which is not started.
+	 *
+	 * @param channels
+	 *          the channels
+	 * @param blockSize
+	 *          the block size
+	 * @return the synthetic connection
+	 */
+	public static SyntheticConnection connection(int channels, int blockSize) {
+		SyntheticConnection connection = new SyntheticConnection("Benchmark", channels, SAMPLE_RATE, blockSize);
+		connection.addSine(SyntheticConnection.ALL_CHANNELS, 10, 1);
+		connection.setNoise(0.2);
+
+		return connection;
+	}
+
+	/**
+	 * Creates one lab per channel of the connection.
+	 *
+	 * @param connection
+	 *          the connection
+	 * @return the labs
+	 */
+	public static List<Lab> labs(SyntheticConnection connection) {
+		List<Lab> labs = new ArrayList<>();
+		for (int ch = 1; ch <= connection.getNumChannels(); ch++) {
+			Lab lab = new DefaultLab(NUM_BANDS);
+			lab.setConnection(connection);
+			lab.setChannel(ch);
+			labs.add(lab);
+		}
+
+		return labs;
+	}
+}
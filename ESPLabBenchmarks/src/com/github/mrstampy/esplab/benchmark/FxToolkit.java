@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.benchmark;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+import javafx.application.Platform;
+import javafx.embed.swing.JFXPanel;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class FxToolkit starts the JavaFX toolkit for benchmarks that create
+ * graphs, and creates them on the FX thread.
+ */
+public class FxToolkit {
+
+	private static volatile boolean initialized;
+
+	private FxToolkit() {
+	}
+
+	/**
+	 * Starts the toolkit if not already started.
+	 */
+	public static synchronized void init() {
+		if (initialized) return;
+
+		new JFXPanel();
+		Platform.setImplicitExit(false);
+		initialized = true;
+	}
+
+	/**
+	 * Calls the specified callable on the FX thread, waiting for its result.
+	 *
+	 * @param <T>
+	 *          the generic type
+	 * @param callable
+	 *          the callable
+	 * @return the result
+	 * @throws Exception
+	 *           the exception
+	 */
+	public static <T> T onFxThread(Callable<T> callable) throws Exception {
+		init();
+
+		FutureTask<T> task = new FutureTask<>(callable);
+		Platform.runLater(task);
+
+		return task.get();
+	}
+}
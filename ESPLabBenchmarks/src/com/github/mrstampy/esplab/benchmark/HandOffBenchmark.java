@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.mrstampy.esplab.buffer.DoubleRingBuffer;
+import com.github.mrstampy.esplab.buffer.OverflowPolicy;
+import com.github.mrstampy.esplab.buffer.SpectrumBuffer;
+import com.github.mrstampy.esplab.dsp.DspPipeline;
+import com.github.mrstampy.esplab.dsp.HandOff;
+import com.github.mrstampy.esplab.dsp.HandOffPolicy;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class HandOffBenchmark measures the latency of the hand offs between
+ * the acquisition, DSP and FX threads, from the producer's offer to the
+ * consumer's receipt, as they are used:<br>
+ * <br>
+ * <ul>
+ * <li>ring: the {@link DoubleRingBuffer} between acquisition and the raw
+ * graphs, one row per channel added per block</li>
+ * <li>handOff: the {@link HandOff} of sample blocks to the DSP stage</li>
+ * <li>spectrum: the {@link SpectrumBuffer} of processed spectra to the FX
+ * thread</li>
+ * </ul>
+ * A consumer thread spins on the stage under test. Each operation offers one
+ * block or spectrum and waits until the consumer has received it, so the
+ * sampled times are the one way hand off plus the consumer's acknowledgement,
+ * a single volatile write. Both threads spin, so at least two cores are
+ * needed for meaningful results. The latency of a block through the
+ * {@link DspPipeline} is measured by the {@link PipelineLatencyBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.SampleTime, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HandOffBenchmark {
+
+	private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+	@Param({ "ring", "handOff", "spectrum" })
+	private String stage;
+
+	@Param({ "1", "4", "16" })
+	private int channels;
+
+	@Param({ "256", "1024", "4096" })
+	private int blockSize;
+
+	private double[][] block;
+	private double[] spectrum;
+
+	private DoubleRingBuffer ring;
+	private double[] drained;
+
+	private HandOff<double[][]> handOff;
+	private SpectrumBuffer spectrumBuffer;
+
+	private Thread consumer;
+	private volatile boolean consuming;
+	private volatile long received;
+	private long sent;
+
+	/**
+	 * Setup.
+	 */
+	@Setup
+	public void setup() {
+		block = BenchmarkSignals.block(channels, blockSize);
+		spectrum = new double[BenchmarkSignals.NUM_BANDS];
+
+		ring = new DoubleRingBuffer(channels * blockSize * 4, OverflowPolicy.OVERWRITE_OLDEST);
+		drained = new double[ring.getCapacity()];
+
+		handOff = new HandOff<>(HandOffPolicy.QUEUE_ALL, DspPipeline.DEFAULT_CAPACITY);
+		spectrumBuffer = new SpectrumBuffer(spectrum.length);
+
+		sent = 0;
+		received = 0;
+		consuming = true;
+
+		consumer = new Thread(() -> consume(), "HandOff consumer");
+		consumer.setDaemon(true);
+		consumer.start();
+	}
+
+	/**
+	 * Tear down.
+	 *
+	 * @throws InterruptedException
+	 *           the interrupted exception
+	 */
+	@TearDown
+	public void tearDown() throws InterruptedException {
+		consuming = false;
+		consumer.join();
+	}
+
+	/**
+	 * Offers a block or spectrum to the stage and waits for its receipt.
+	 *
+	 * @return the number received
+	 */
+	@Benchmark
+	public long offerToReceipt() {
+		long seq = ++sent;
+
+		switch (stage) {
+		case "ring":
+			for (double[] row : block) {
+				ring.addAll(row);
+			}
+			break;
+		case "handOff":
+			handOff.offer(block);
+			break;
+		default:
+			spectrumBuffer.write(spectrum);
+			break;
+		}
+
+		long start = System.nanoTime();
+		long r;
+		while ((r = received) < seq) {
+			if (System.nanoTime() - start > TIMEOUT_NANOS) throw new IllegalStateException("Not received: " + stage);
+		}
+
+		return r;
+	}
+
+	private void consume() {
+		long blockSamples = (long) channels * blockSize;
+		long samples = 0;
+
+		while (consuming) {
+			switch (stage) {
+			case "ring":
+				int num = ring.drainTo(drained);
+				if (num == 0) continue;
+
+				samples += num;
+				received = samples / blockSamples;
+				break;
+			case "handOff":
+				if (handOff.poll() != null) received++;
+				break;
+			default:
+				if (spectrumBuffer.read() != null) received++;
+				break;
+			}
+		}
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.benchmark;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.mrstampy.esp.dsp.lab.EspWindowFunction;
+import com.github.mrstampy.esp.dsp.lab.FFTType;
+import com.github.mrstampy.esp.dsp.lab.Lab;
+import com.github.mrstampy.esplab.connection.SyntheticConnection;
+import com.github.mrstampy.esplab.dsp.DspExecutor;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class LabProcessBenchmark measures the cost of
+ * {@link Lab#process(double[][])} for each {@link FFTType} and
+ * {@link EspWindowFunction}, for one lab per channel processed either one
+ * after the other or forked across the {@link DspExecutor} pool as the
+ * multi channel graphs do.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LabProcessBenchmark {
+
+	@Param
+	private FFTType fftType;
+
+	@Param
+	private EspWindowFunction windowFunction;
+
+	@Param({ "1", "4", "16" })
+	private int channels;
+
+	@Param({ "256", "1024", "4096" })
+	private int blockSize;
+
+	private List<Lab> labs;
+	private double[][][] blocks;
+
+	private Runnable processAll = () -> DspExecutor.processAll(labs, blocks);
+
+	/**
+	 * Setup.
+	 */
+	@Setup
+	public void setup() {
+		SyntheticConnection connection = BenchmarkSignals.connection(channels, blockSize);
+		connection.setWindowFunction(windowFunction);
+
+		labs = BenchmarkSignals.labs(connection);
+		labs.forEach(l -> l.setFftType(fftType));
+
+		double[][] block = BenchmarkSignals.block(channels, blockSize);
+		blocks = new double[channels][][];
+		for (int i = 0; i < channels; i++) {
+			blocks[i] = new double[][] { block[i] };
+		}
+	}
+
+	/**
+	 * Processes each channel's block with its lab on the calling thread.
+	 */
+	@Benchmark
+	public void sequential() {
+		for (int i = 0; i < blocks.length; i++) {
+			labs.get(i).process(blocks[i]);
+		}
+	}
+
+	/**
+	 * Processes each channel's block with its lab in parallel on the
+	 * {@link DspExecutor} pool.
+	 */
+	@Benchmark
+	public void forked() {
+		DspExecutor.getPool().invoke(ForkJoinTask.adapt(processAll));
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.mrstampy.esp.dsp.lab.Lab;
+import com.github.mrstampy.esplab.dsp.DspPipeline;
+import com.github.mrstampy.esplab.dsp.HandOffPolicy;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class PipelineLatencyBenchmark measures the latency of a block of
+ * samples through a {@link DspPipeline}, from {@link DspPipeline#submit(double[][])}
+ * on the acquisition thread to the render request and the collection of the
+ * processed spectra, ie. everything but the painting on the FX thread.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelineLatencyBenchmark {
+
+	private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+	@Param({ "1", "4", "16" })
+	private int channels;
+
+	@Param({ "256", "1024", "4096" })
+	private int blockSize;
+
+	@Param
+	private HandOffPolicy policy;
+
+	private List<Lab> labs;
+	private DspPipeline pipeline;
+	private double[][] block;
+
+	private volatile boolean rendered;
+
+	/**
+	 * Setup.
+	 */
+	@Setup
+	public void setup() {
+		labs = BenchmarkSignals.labs(BenchmarkSignals.connection(channels, blockSize));
+		block = BenchmarkSignals.block(channels, blockSize);
+
+		pipeline = new DspPipeline(labs, policy, DspPipeline.DEFAULT_CAPACITY, () -> rendered = true);
+		pipeline.start();
+	}
+
+	/**
+	 * Tear down.
+	 */
+	@TearDown
+	public void tearDown() {
+		pipeline.stop();
+	}
+
+	/**
+	 * Submits a block and waits for its spectra.
+	 *
+	 * @param bh
+	 *          the blackhole
+	 */
+	@Benchmark
+	public void submitToRender(Blackhole bh) {
+		rendered = false;
+		pipeline.submit(block);
+
+		long start = System.nanoTime();
+		while (!rendered) {
+			if (System.nanoTime() - start > TIMEOUT_NANOS) throw new IllegalStateException("No render request");
+		}
+
+		for (int i = 0; i < labs.size(); i++) {
+			bh.consume(pipeline.pollRender(i));
+		}
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) ESPLab 2014 Burton Alexander
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ * 
+ */
+package com.github.mrstampy.esplab.gui;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.mrstampy.esplab.benchmark.BenchmarkSignals;
+import com.github.mrstampy.esplab.benchmark.FxToolkit;
+import com.github.mrstampy.esplab.connection.SyntheticConnection;
+import com.github.mrstampy.esplab.engine.AcquisitionEngine;
+
+// TODO: Auto-generated Javadoc
+/**
+ * The Class GraphAcceptBenchmark measures the throughput of the work done on
+ * the acquisition thread per poll for the {@link RawDataGraph} and the
+ * {@link PowerGraph}, ie. {@link AcquisitionEngine#accept(double[][])}
+ * processing the samples and passing them to
+ * {@link AbstractGraph#graphAccept(double[][])}. The graphs are created on the FX thread and marked as
+ * running without polling their connection; the FX thread renders as it
+ * would in the application.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GraphAcceptBenchmark {
+
+	@Param({ "1", "4", "16" })
+	private int channels;
+
+	@Param({ "256", "1024", "4096" })
+	private int blockSize;
+
+	private double[][] block;
+
+	private RawDataGraph rawDataGraph;
+	private PowerGraph powerGraph;
+
+	/**
+	 * Setup.
+	 *
+	 * @throws Exception
+	 *           the exception
+	 */
+	@Setup
+	public void setup() throws Exception {
+		SyntheticConnection connection = BenchmarkSignals.connection(channels, blockSize);
+		block = BenchmarkSignals.block(channels, blockSize);
+
+		rawDataGraph = FxToolkit.onFxThread(() -> new RawDataGraph());
+		rawDataGraph.setConnection(connection);
+		rawDataGraph.running.set(true);
+
+		powerGraph = FxToolkit.onFxThread(() -> new PowerGraph(BenchmarkSignals.labs(connection).get(0)));
+		powerGraph.running.set(true);
+		powerGraph.getPipeline().start();
+	}
+
+	/**
+	 * Tear down.
+	 */
+	@TearDown
+	public void tearDown() {
+		rawDataGraph.running.set(false);
+		powerGraph.running.set(false);
+		powerGraph.getPipeline().stop();
+	}
+
+	/**
+	 * Raw data graph accept.
+	 */
+	@Benchmark
+	public void rawDataGraph() {
+		rawDataGraph.getEngine().accept(block);
+	}
+
+	/**
+	 * Power graph accept.
+	 */
+	@Benchmark
+	public void powerGraph() {
+		powerGraph.getEngine().accept(block);
+	}
+}